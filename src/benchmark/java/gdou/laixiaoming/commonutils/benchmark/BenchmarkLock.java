@@ -0,0 +1,168 @@
+package gdou.laixiaoming.commonutils.benchmark;
+
+import gdou.laixiaoming.commonutils.distributed.lock.DistributedLock;
+import gdou.laixiaoming.commonutils.distributed.lock.JedisScriptExecutor;
+import gdou.laixiaoming.commonutils.distributed.lock.LockMetrics;
+import gdou.laixiaoming.commonutils.distributed.lock.RedisLock;
+import gdou.laixiaoming.commonutils.distributed.lock.RedisLockReleaseSubscriber;
+import gdou.laixiaoming.commonutils.distributed.lock.RedisLockWatchdog;
+import gdou.laixiaoming.commonutils.distributed.lock.ReentrantRedisLock;
+import gdou.laixiaoming.commonutils.distributed.lock.ZooKeeperDistributedLock;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 被测锁的统一入口
+ */
+public abstract class BenchmarkLock implements AutoCloseable {
+
+    public static final String REDIS = "redis";
+    public static final String REENTRANT_REDIS = "reentrant-redis";
+    public static final String ZOOKEEPER = "zookeeper";
+
+    /**
+     * 锁占用时间(s), 基准测试中锁总会被显式释放
+     */
+    private static final int LOCK_TIME = 30;
+
+    private static final String ZK_ROOT = "/benchmark-locks";
+
+    public abstract void lock(String lockKey, String val) throws InterruptedException;
+
+    public abstract void unlock(String lockKey);
+
+    /**
+     * 服务端已执行的命令/请求总数, 用于计算每次加锁的命令数; Redis包括脚本内执行的命令
+     */
+    public abstract long serverCommands();
+
+    /**
+     * 服务端已执行的脚本数, 不使用脚本的锁返回0
+     */
+    public long serverScripts() {
+        return 0;
+    }
+
+    public static BenchmarkLock create(String type) throws Exception {
+        switch (type) {
+            case REDIS:
+            case REENTRANT_REDIS:
+                return new Redis(type);
+            case ZOOKEEPER:
+                return new ZooKeeperLock();
+            default:
+                throw new IllegalArgumentException(type);
+        }
+    }
+
+    private static class Redis extends BenchmarkLock {
+
+        private JedisPool jedisPool;
+
+        private RedisLockReleaseSubscriber releaseSubscriber;
+
+        private RedisLockWatchdog watchdog;
+
+        private DistributedLock lock;
+
+        Redis(String type) {
+            JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
+            //等待的线程不占用连接, 连接数只需覆盖同时发出的命令
+            jedisPoolConfig.setMaxTotal(300);
+            jedisPoolConfig.setMaxIdle(300);
+            this.jedisPool = new JedisPool(jedisPoolConfig, EmbeddedServers.HOST, EmbeddedServers.REDIS_PORT, 1000);
+            try (Jedis jedis = jedisPool.getResource()) {
+                jedis.flushAll();
+            }
+            this.releaseSubscriber = new RedisLockReleaseSubscriber(jedisPool);
+            this.watchdog = new RedisLockWatchdog(jedisPool);
+            JedisScriptExecutor scriptExecutor = new JedisScriptExecutor(jedisPool);
+            this.lock = REDIS.equals(type)
+                    ? new RedisLock(scriptExecutor, releaseSubscriber, watchdog, LockMetrics.NOOP)
+                    : new ReentrantRedisLock(scriptExecutor, releaseSubscriber, watchdog, LockMetrics.NOOP);
+        }
+
+        @Override
+        public void lock(String lockKey, String val) throws InterruptedException {
+            lock.lock(lockKey, val, LOCK_TIME);
+        }
+
+        @Override
+        public void unlock(String lockKey) {
+            lock.unlock(lockKey);
+        }
+
+        @Override
+        public long serverCommands() {
+            try (Jedis jedis = jedisPool.getResource()) {
+                //扣除本次INFO命令
+                return EmbeddedServers.redisCommands(jedis) - 1;
+            }
+        }
+
+        @Override
+        public long serverScripts() {
+            try (Jedis jedis = jedisPool.getResource()) {
+                return EmbeddedServers.redisScripts(jedis);
+            }
+        }
+
+        @Override
+        public void close() {
+            releaseSubscriber.destroy();
+            watchdog.destroy();
+            jedisPool.close();
+        }
+    }
+
+    private static class ZooKeeperLock extends BenchmarkLock {
+
+        private ZooKeeper zk;
+
+        private final Map<String, ZooKeeperDistributedLock> locks = new ConcurrentHashMap<>();
+
+        ZooKeeperLock() throws Exception {
+            CountDownLatch connected = new CountDownLatch(1);
+            this.zk = new ZooKeeper(EmbeddedServers.zkConnectString(), 10000, event -> {
+                if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
+                    connected.countDown();
+                }
+            });
+            if (!connected.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("ZooKeeper连接超时");
+            }
+        }
+
+        private ZooKeeperDistributedLock lockOf(String lockKey) {
+            return locks.computeIfAbsent(lockKey, key -> new ZooKeeperDistributedLock(zk, ZK_ROOT, key));
+        }
+
+        @Override
+        public void lock(String lockKey, String val) {
+            lockOf(lockKey).waitForLock();
+        }
+
+        @Override
+        public void unlock(String lockKey) {
+            lockOf(lockKey).unlock();
+        }
+
+        @Override
+        public long serverCommands() {
+            return EmbeddedServers.zkRequests();
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            zk.close();
+        }
+    }
+}
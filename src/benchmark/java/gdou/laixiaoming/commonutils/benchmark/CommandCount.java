@@ -0,0 +1,43 @@
+package gdou.laixiaoming.commonutils.benchmark;
+
+import java.util.UUID;
+
+/**
+ * 每次无竞争加锁-释放在服务端执行的命令/请求数
+ * 运行: java -cp target/benchmarks.jar gdou.laixiaoming.commonutils.benchmark.CommandCount
+ * Redis的命令数包括脚本内执行的命令, 脚本数(eval/evalsha)单独列出, 每个脚本为一次往返
+ * ZooKeeper的请求数包含会话心跳, 次数足够多时可忽略
+ */
+public class CommandCount {
+
+    private static final int WARMUP = 100;
+    private static final int ROUNDS = 10000;
+
+    public static void main(String[] args) throws Exception {
+        EmbeddedServers.start();
+        try {
+            for (String type : new String[]{BenchmarkLock.REDIS, BenchmarkLock.REENTRANT_REDIS, BenchmarkLock.ZOOKEEPER}) {
+                try (BenchmarkLock lock = BenchmarkLock.create(type)) {
+                    String val = UUID.randomUUID().toString();
+                    run(lock, val, WARMUP);
+                    long scriptsBefore = lock.serverScripts();
+                    long before = lock.serverCommands();
+                    run(lock, val, ROUNDS);
+                    long commands = lock.serverCommands() - before;
+                    long scripts = lock.serverScripts() - scriptsBefore;
+                    System.out.printf("%-16s %.2f server-side commands/acquisition, %.2f scripts/acquisition%n",
+                            type, (double) commands / ROUNDS, (double) scripts / ROUNDS);
+                }
+            }
+        } finally {
+            EmbeddedServers.stop();
+        }
+    }
+
+    private static void run(BenchmarkLock lock, String val, int rounds) throws InterruptedException {
+        for (int i = 0; i < rounds; i++) {
+            lock.lock("benchmark-command-count", val);
+            lock.unlock("benchmark-command-count");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package gdou.laixiaoming.commonutils.benchmark;
+
+import org.apache.zookeeper.server.NIOServerCnxn;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import redis.clients.jedis.Jedis;
+import redis.embedded.RedisServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的本地Redis和ZooKeeper
+ * 每个JMH fork进程启动一次, 数据目录为临时目录, 每次启动都是空库
+ */
+public final class EmbeddedServers {
+
+    public static final String HOST = "127.0.0.1";
+    public static final int REDIS_PORT = 16379;
+    public static final int ZK_PORT = 12181;
+
+    private static RedisServer redisServer;
+
+    private static ZooKeeperServer zkServer;
+    private static NIOServerCnxn.Factory zkFactory;
+    private static File zkDir;
+
+    private static int references;
+
+    private EmbeddedServers() {
+    }
+
+    public static synchronized void start() throws Exception {
+        if (references++ > 0) {
+            return ;
+        }
+        redisServer = RedisServer.builder().port(REDIS_PORT).setting("save \"\"").setting("appendonly no").build();
+        redisServer.start();
+
+        zkDir = Files.createTempDirectory("benchmark-zk").toFile();
+        zkServer = new ZooKeeperServer(zkDir, zkDir, 2000);
+        zkFactory = new NIOServerCnxn.Factory(new InetSocketAddress(HOST, ZK_PORT));
+        zkFactory.startup(zkServer);
+    }
+
+    public static synchronized void stop() throws IOException {
+        if (--references > 0) {
+            return ;
+        }
+        zkFactory.shutdown();
+        zkServer.shutdown();
+        try (Stream<Path> paths = Files.walk(zkDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+        redisServer.stop();
+    }
+
+    public static String zkConnectString() {
+        return HOST + ":" + ZK_PORT;
+    }
+
+    /**
+     * Redis服务端执行的命令总数, 来自INFO commandstats
+     * 包括脚本内通过redis.call执行的命令, 不等于客户端的往返次数
+     */
+    public static long redisCommands(Jedis jedis) {
+        return redisCalls(jedis, false);
+    }
+
+    /**
+     * Redis执行的脚本数(eval/evalsha), 每次为一个客户端往返
+     */
+    public static long redisScripts(Jedis jedis) {
+        return redisCalls(jedis, true);
+    }
+
+    private static long redisCalls(Jedis jedis, boolean scriptsOnly) {
+        long calls = 0;
+        for (String line : jedis.info("commandstats").split("\r\n")) {
+            int start = line.indexOf("calls=");
+            if (!line.startsWith("cmdstat_") || start < 0) {
+                continue;
+            }
+            if (scriptsOnly && !line.startsWith("cmdstat_eval:") && !line.startsWith("cmdstat_evalsha:")) {
+                continue;
+            }
+            int end = line.indexOf(',', start);
+            calls += Long.parseLong(line.substring(start + "calls=".length(), end));
+        }
+        return calls;
+    }
+
+    /**
+     * ZooKeeper已收到的请求总数(含心跳)
+     */
+    public static long zkRequests() {
+        return zkServer.serverStats().getPacketsReceived();
+    }
+}
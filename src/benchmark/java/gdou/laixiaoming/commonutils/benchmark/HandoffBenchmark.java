@@ -0,0 +1,66 @@
+package gdou.laixiaoming.commonutils.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 交接延迟: 两个线程争用同一个key, 每次加锁几乎都要等待对方释放,
+ * 单次加锁-释放的平均耗时即释放到下一个等待者获取之间的交接耗时加上一次无竞争的加锁-释放
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HandoffBenchmark {
+
+    private static final String LOCK_KEY = "benchmark-handoff";
+
+    @Param({BenchmarkLock.REDIS, BenchmarkLock.REENTRANT_REDIS, BenchmarkLock.ZOOKEEPER})
+    private String lock;
+
+    private BenchmarkLock target;
+
+    @State(Scope.Thread)
+    public static class Holder {
+
+        private final String val = UUID.randomUUID().toString();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        EmbeddedServers.start();
+        target = BenchmarkLock.create(lock);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.close();
+        EmbeddedServers.stop();
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(2)
+    public void handoff(Holder holder) throws InterruptedException {
+        target.lock(LOCK_KEY, holder.val);
+        target.unlock(LOCK_KEY);
+    }
+}
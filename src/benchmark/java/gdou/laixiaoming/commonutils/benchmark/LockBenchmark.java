@@ -0,0 +1,95 @@
+package gdou.laixiaoming.commonutils.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 加锁-释放的延迟和吞吐量
+ * 单线程即无竞争延迟; 竞争线程数通过-t指定, 如:
+ * for t in 1 4 16 64 256; do java -jar target/benchmarks.jar LockBenchmark -t $t -rff lock-t$t.csv; done
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class LockBenchmark {
+
+    @Param({BenchmarkLock.REDIS, BenchmarkLock.REENTRANT_REDIS, BenchmarkLock.ZOOKEEPER})
+    private String lock;
+
+    /**
+     * 竞争的key数量, 线程按顺序轮流使用各个key
+     */
+    @Param({"1", "10", "1000"})
+    private int keys;
+
+    private BenchmarkLock target;
+
+    private String[] lockKeys;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Holder {
+
+        private final String val = UUID.randomUUID().toString();
+
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setup(LockBenchmark benchmark) {
+            //各线程从不同的key开始
+            next = benchmark.threads.getAndIncrement() % benchmark.keys;
+        }
+
+        String nextKey(String[] lockKeys) {
+            String lockKey = lockKeys[next];
+            next = next + 1 == lockKeys.length ? 0 : next + 1;
+            return lockKey;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        EmbeddedServers.start();
+        target = BenchmarkLock.create(lock);
+        lockKeys = new String[keys];
+        String holder = UUID.randomUUID().toString();
+        for (int i = 0; i < keys; i++) {
+            lockKeys[i] = "benchmark-" + i;
+            //预先创建每个key的资源, 不计入测量
+            target.lock(lockKeys[i], holder);
+            target.unlock(lockKeys[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        target.close();
+        EmbeddedServers.stop();
+    }
+
+    @Benchmark
+    public void acquireRelease(Holder holder) throws InterruptedException {
+        String lockKey = holder.nextKey(lockKeys);
+        target.lock(lockKey, holder.val);
+        target.unlock(lockKey);
+    }
+}
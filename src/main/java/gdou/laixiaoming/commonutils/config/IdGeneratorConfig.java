@@ -0,0 +1,38 @@
+package gdou.laixiaoming.commonutils.config;
+
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
+import gdou.laixiaoming.commonutils.distributed.id.RedisSegmentAllocator;
+import gdou.laixiaoming.commonutils.distributed.id.SegmentAllocator;
+import gdou.laixiaoming.commonutils.distributed.id.SegmentIdGenerator;
+import gdou.laixiaoming.commonutils.distributed.id.ZooKeeperSegmentAllocator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import redis.clients.jedis.JedisPool;
+
+@Configuration
+public class IdGeneratorConfig {
+
+    /**
+     * 号段存储, 默认使用Redis
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "id.generator", name = "backend", havingValue = "redis", matchIfMissing = true)
+    public SegmentAllocator redisSegmentAllocator(JedisPool jedisPool) {
+        return new RedisSegmentAllocator(jedisPool);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "id.generator", name = "backend", havingValue = "zookeeper")
+    public SegmentAllocator zooKeeperSegmentAllocator(ZooKeeperConnection connection,
+            @Value("${id.generator.zookeeper-root:/id-segments}") String root) {
+        return new ZooKeeperSegmentAllocator(connection, root);
+    }
+
+    @Bean
+    public SegmentIdGenerator segmentIdGenerator(SegmentAllocator allocator,
+            @Value("${id.generator.step:1000}") int step) {
+        return new SegmentIdGenerator(allocator, step);
+    }
+}
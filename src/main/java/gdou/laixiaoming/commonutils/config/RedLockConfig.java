@@ -0,0 +1,43 @@
+package gdou.laixiaoming.commonutils.config;
+
+import gdou.laixiaoming.commonutils.distributed.lock.LockMetrics;
+import gdou.laixiaoming.commonutils.distributed.lock.RedLock;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 配置了redlock.nodes时启用多节点Redis锁
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "redlock", name = "nodes")
+@EnableConfigurationProperties(RedLockProperties.class)
+public class RedLockConfig {
+
+    @Autowired
+    private RedLockProperties properties;
+
+    @Bean
+    public RedLock redLock(LockMetrics lockMetrics) {
+        List<JedisPool> jedisPools = new ArrayList<>(properties.getNodes().size());
+        for (String node : properties.getNodes()) {
+            String host = StringUtils.substringBeforeLast(node.trim(), ":");
+            int port = Integer.parseInt(StringUtils.substringAfterLast(node.trim(), ":"));
+            JedisPoolConfig jedisPoolConfig = new JedisPoolConfig();
+            jedisPoolConfig.setMaxTotal(properties.getMaxActive());
+            //节点不可用时快速失败, 不阻塞其余节点的结果
+            jedisPoolConfig.setMaxWaitMillis(properties.getTimeout());
+            jedisPools.add(new JedisPool(jedisPoolConfig, host, port, properties.getTimeout(),
+                    StringUtils.defaultIfBlank(properties.getPassword(), null)));
+        }
+        return new RedLock(jedisPools, properties.getTimeout(), lockMetrics);
+    }
+}
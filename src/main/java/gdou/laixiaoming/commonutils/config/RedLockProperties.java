@@ -0,0 +1,62 @@
+package gdou.laixiaoming.commonutils.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多节点Redis锁配置
+ */
+@ConfigurationProperties(prefix = "redlock")
+public class RedLockProperties {
+
+    /**
+     * 相互独立的Redis节点, 格式为host:port
+     */
+    private List<String> nodes = new ArrayList<>();
+
+    private String password;
+
+    /**
+     * 单个节点的连接及操作超时时间(ms)
+     */
+    private int timeout = 100;
+
+    /**
+     * 每个节点的最大连接数
+     */
+    private int maxActive = 100;
+
+    public List<String> getNodes() {
+        return nodes;
+    }
+
+    public void setNodes(List<String> nodes) {
+        this.nodes = nodes;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+}
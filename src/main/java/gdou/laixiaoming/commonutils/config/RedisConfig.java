@@ -1,7 +1,17 @@
 package gdou.laixiaoming.commonutils.config;
 
 
+import gdou.laixiaoming.commonutils.distributed.lock.JedisScriptExecutor;
+import gdou.laixiaoming.commonutils.distributed.lock.LettuceScriptExecutor;
+import gdou.laixiaoming.commonutils.distributed.lock.RedisScriptExecutor;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -9,6 +19,9 @@ import org.springframework.context.annotation.Configuration;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 @EnableConfigurationProperties(RedisProperties.class)
 public class RedisConfig {
@@ -25,4 +38,55 @@ public class RedisConfig {
         JedisPool pool = new JedisPool(jedisPoolConfig, properties.getHost(), properties.getPort(), 1000);
         return pool;
     }
-}
\ No newline at end of file
+
+    /**
+     * 锁的客户端后端, 默认使用Jedis连接池
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.lock", name = "client", havingValue = "jedis", matchIfMissing = true)
+    public RedisScriptExecutor jedisScriptExecutor(JedisPool jedisPool) {
+        return new JedisScriptExecutor(jedisPool);
+    }
+
+    /**
+     * redis.lock.client=lettuce时使用基于Netty的非阻塞后端, 少量共享连接承载全部锁命令
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.lock", name = "client", havingValue = "lettuce")
+    public RedisScriptExecutor lettuceScriptExecutor(
+            @Value("${redis.lock.lettuce.connections:2}") int connectionCount) {
+        RedisURI redisURI = RedisURI.create(properties.getHost(), properties.getPort());
+        redisURI.setTimeout(Duration.ofMillis(1000));
+        redisURI.setDatabase(properties.getDatabase());
+        if (properties.getPassword() != null && !properties.getPassword().isEmpty()) {
+            redisURI.setPassword(properties.getPassword());
+        }
+        return new LettuceScriptExecutor(RedisClient.create(redisURI), connectionCount);
+    }
+
+    /**
+     * 连接池监控指标: 活跃/空闲连接数, 等待获取连接的线程数, 获取连接的等待耗时
+     */
+    @Bean
+    public MeterBinder jedisPoolMetrics(JedisPool jedisPool) {
+        return registry -> {
+            Gauge.builder("redis.pool.active", jedisPool, JedisPool::getNumActive)
+                    .description("借出的连接数")
+                    .register(registry);
+            Gauge.builder("redis.pool.idle", jedisPool, JedisPool::getNumIdle)
+                    .description("空闲的连接数")
+                    .register(registry);
+            Gauge.builder("redis.pool.waiters", jedisPool, JedisPool::getNumWaiters)
+                    .description("等待获取连接的线程数")
+                    .register(registry);
+            TimeGauge.builder("redis.pool.borrow.wait.mean", jedisPool, TimeUnit.MILLISECONDS,
+                    JedisPool::getMeanBorrowWaitTimeMillis)
+                    .description("获取连接的平均等待时间")
+                    .register(registry);
+            TimeGauge.builder("redis.pool.borrow.wait.max", jedisPool, TimeUnit.MILLISECONDS,
+                    JedisPool::getMaxBorrowWaitTimeMillis)
+                    .description("获取连接的最大等待时间")
+                    .register(registry);
+        };
+    }
+}
@@ -1,28 +1,41 @@
 package gdou.laixiaoming.commonutils.config;
 
-import org.apache.zookeeper.Watcher;
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
 import org.apache.zookeeper.ZooKeeper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 import java.io.IOException;
 
 @Configuration
+@EnableConfigurationProperties(ZooKeeperProperties.class)
 public class ZooKeeperConfig {
 
-    private static final Logger logger = LoggerFactory.getLogger(ZooKeeperConfig.class);
+    @Autowired
+    private ZooKeeperProperties properties;
 
+    /**
+     * 连接状态及会话过期后的重连由ZooKeeperConnection处理
+     * 延迟到首次注入时才建立连接, 不使用ZooKeeper的应用不会启动客户端
+     */
     @Bean
-    public ZooKeeper zooKeeper() throws IOException {
-        ZooKeeper zooKeeper = new ZooKeeper("127.0.0.1:2181", 3000, event -> {
-            // 建立连接
-            if (event.getState() == Watcher.Event.KeeperState.SyncConnected) {
-                logger.info("ZooKeeper连接成功");
-            }
-        });
-        return zooKeeper;
+    @Lazy
+    public ZooKeeperConnection zooKeeperConnection() throws IOException {
+        return new ZooKeeperConnection(properties.getConnectString(), properties.getSessionTimeout());
+    }
+
+    /**
+     * 兼容直接注入ZooKeeper的代码, 为连接当前的客户端
+     * 会话过期重建后该客户端不再可用, 新代码应注入ZooKeeperConnection并每次通过getZooKeeper()获取
+     * 客户端由ZooKeeperConnection关闭
+     */
+    @Bean(destroyMethod = "")
+    @Lazy
+    public ZooKeeper zooKeeper(ZooKeeperConnection zooKeeperConnection) {
+        return zooKeeperConnection.getZooKeeper();
     }
 
 }
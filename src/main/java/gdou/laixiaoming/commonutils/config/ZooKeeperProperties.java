@@ -0,0 +1,49 @@
+package gdou.laixiaoming.commonutils.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * ZooKeeper连接配置
+ */
+@ConfigurationProperties(prefix = "zookeeper")
+public class ZooKeeperProperties {
+
+    /**
+     * 连接串, 格式为host:port,host:port
+     */
+    private String connectString = "127.0.0.1:2181";
+
+    /**
+     * 会话超时时间(ms)
+     */
+    private int sessionTimeout = 3000;
+
+    /**
+     * 分布式锁的根节点
+     */
+    private String lockRoot = "/locks";
+
+    public String getConnectString() {
+        return connectString;
+    }
+
+    public void setConnectString(String connectString) {
+        this.connectString = connectString;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+
+    public String getLockRoot() {
+        return lockRoot;
+    }
+
+    public void setLockRoot(String lockRoot) {
+        this.lockRoot = lockRoot;
+    }
+}
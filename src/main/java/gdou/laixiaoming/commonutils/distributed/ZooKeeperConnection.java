@@ -0,0 +1,150 @@
+package gdou.laixiaoming.commonutils.distributed;
+
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ZooKeeper连接
+ * 跟踪连接状态, 会话过期后自动重建客户端; 使用方每次通过{@link #getZooKeeper()}获取当前客户端
+ */
+public class ZooKeeperConnection implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZooKeeperConnection.class);
+
+    private String connectString;
+
+    private int sessionTimeout;
+
+    private volatile ZooKeeper zooKeeper;
+
+    /**
+     * 客户端代数, 用于忽略已废弃客户端的事件
+     */
+    private int generation;
+
+    private volatile boolean connected;
+
+    private volatile boolean closed;
+
+    private final List<Watcher> listeners = new CopyOnWriteArrayList<>();
+
+    public ZooKeeperConnection(String connectString, int sessionTimeout) throws IOException {
+        this.connectString = connectString;
+        this.sessionTimeout = sessionTimeout;
+        synchronized (this) {
+            this.zooKeeper = newZooKeeper();
+        }
+    }
+
+    public ZooKeeper getZooKeeper() {
+        return zooKeeper;
+    }
+
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 等待连接可用
+     * @param timeout 超时时间(ms)
+     * @return 是否已连接
+     */
+    public synchronized boolean awaitConnected(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!connected && !closed) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return connected;
+    }
+
+    /**
+     * 监听连接状态变化, 回调在ZK事件线程上执行
+     */
+    public void addListener(Watcher listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Watcher listener) {
+        listeners.remove(listener);
+    }
+
+    private ZooKeeper newZooKeeper() throws IOException {
+        int current = ++generation;
+        return new ZooKeeper(connectString, sessionTimeout, event -> onEvent(current, event));
+    }
+
+    private void onEvent(int eventGeneration, WatchedEvent event) {
+        if (event.getType() != Watcher.Event.EventType.None) {
+            return ;
+        }
+        synchronized (this) {
+            if (eventGeneration != generation || closed) {
+                return ;
+            }
+            switch (event.getState()) {
+                case SyncConnected:
+                    connected = true;
+                    logger.info("ZooKeeper连接成功");
+                    break;
+                case Disconnected:
+                    connected = false;
+                    logger.warn("ZooKeeper连接断开, 等待重连");
+                    break;
+                case Expired:
+                    connected = false;
+                    logger.warn("ZooKeeper会话过期, 重建连接");
+                    renew();
+                    break;
+                default:
+                    break;
+            }
+            notifyAll();
+        }
+        for (Watcher listener : listeners) {
+            try {
+                listener.process(event);
+            } catch (Exception e) {
+                logger.warn("ZooKeeper连接状态监听执行失败", e);
+            }
+        }
+    }
+
+    private void renew() {
+        ZooKeeper expired = zooKeeper;
+        try {
+            zooKeeper = newZooKeeper();
+        } catch (IOException e) {
+            logger.error("重建ZooKeeper连接失败", e);
+        }
+        try {
+            expired.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            closed = true;
+            connected = false;
+            notifyAll();
+        }
+        zooKeeper.close();
+    }
+}
@@ -0,0 +1,25 @@
+package gdou.laixiaoming.commonutils.distributed.id;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 基于Redis INCRBY的号段分配, 每个号段一次往返
+ */
+public class RedisSegmentAllocator implements SegmentAllocator {
+
+    private static final String KEY_PREFIX = "id-segment:";
+
+    private JedisPool jedisPool;
+
+    public RedisSegmentAllocator(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    @Override
+    public long allocate(String bizTag, int step) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return jedis.incrBy(KEY_PREFIX + bizTag, step);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package gdou.laixiaoming.commonutils.distributed.id;
+
+/**
+ * 号段分配, 每次从中心存储预留一段连续的ID
+ */
+public interface SegmentAllocator {
+
+    /**
+     * 预留一个号段
+     * @param bizTag 业务标识, 不同业务的ID相互独立
+     * @param step 号段长度
+     * @return 号段的最大ID(含), 号段为(返回值 - step, 返回值]
+     */
+    long allocate(String bizTag, int step);
+}
@@ -0,0 +1,184 @@
+package gdou.laixiaoming.commonutils.distributed.id;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 号段模式的分布式ID生成器
+ * 每个节点一次从{@link SegmentAllocator}预留step个ID, 在本地以原子自增发放, 发放ID不访问中心存储;
+ * 当前号段消耗到一定比例时异步预取下一号段, 号段耗尽时直接切换, 中心存储的延迟不会出现在取ID的路径上
+ * ID在同一业务内全局唯一、单节点内递增, 节点重启时未用完的号段会被跳过
+ * 销毁后不再预取, 未完成的预取被取消, 号段耗尽时同步分配
+ */
+public class SegmentIdGenerator implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentIdGenerator.class);
+
+    /**
+     * 当前号段剩余比例低于该值时预取下一号段
+     */
+    private static final double PREFETCH_RATIO = 0.2;
+
+    private SegmentAllocator allocator;
+
+    private int step;
+
+    private final Map<String, Sequence> sequences = new ConcurrentHashMap<>();
+
+    private volatile boolean destroyed;
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param allocator
+     * @param step 号段长度, 应覆盖预取耗时内的ID消耗量
+     */
+    public SegmentIdGenerator(SegmentAllocator allocator, int step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("step必须大于0");
+        }
+        this.allocator = allocator;
+        this.step = step;
+    }
+
+    public long nextId(String bizTag) {
+        return sequence(bizTag).nextId();
+    }
+
+    /**
+     * 获取业务的ID序列, 频繁取ID时可持有该对象, 省去每次的查找
+     */
+    public Sequence sequence(String bizTag) {
+        return sequences.computeIfAbsent(bizTag, Sequence::new);
+    }
+
+    @Override
+    public void destroy() {
+        destroyed = true;
+        //shutdownNow丢弃的预取任务不会完成, 需取消对应的future, 否则切换号段时一直等待
+        prefetchExecutor.shutdownNow();
+        for (Sequence sequence : sequences.values()) {
+            sequence.cancelPrefetch();
+        }
+    }
+
+    /**
+     * 号段[cursor初始值, max)
+     */
+    private static class Segment {
+
+        private final AtomicLong cursor;
+
+        private final long max;
+
+        /**
+         * 发放到该ID时触发预取, 只有一个线程会取到该ID
+         */
+        private final long prefetchAt;
+
+        Segment(long end, int step) {
+            this.cursor = new AtomicLong(end - step + 1);
+            this.max = end + 1;
+            this.prefetchAt = max - Math.max(1, (long) (step * PREFETCH_RATIO));
+        }
+    }
+
+    public class Sequence {
+
+        private final String bizTag;
+
+        private volatile Segment current;
+
+        /**
+         * 预取中或已预取的下一号段
+         */
+        private volatile CompletableFuture<Segment> next;
+
+        Sequence(String bizTag) {
+            this.bizTag = bizTag;
+            this.current = allocate();
+        }
+
+        public long nextId() {
+            for(; ;){
+                Segment segment = current;
+                long id = segment.cursor.getAndIncrement();
+                if (id < segment.max) {
+                    if (id == segment.prefetchAt) {
+                        prefetch();
+                    }
+                    return id;
+                }
+                switchSegment(segment);
+            }
+        }
+
+        private synchronized void prefetch() {
+            if (next != null || destroyed) {
+                return ;
+            }
+            try {
+                next = CompletableFuture.supplyAsync(this::allocate, prefetchExecutor);
+            } catch (RejectedExecutionException e) {
+                //已销毁, 号段耗尽时同步分配
+                return ;
+            }
+            if (destroyed) {
+                //与destroy并发时由任意一方取消
+                cancelPrefetch();
+            }
+        }
+
+        /**
+         * 取消未完成的预取, 不获取监视器, 避免与等待预取的切换线程互相等待
+         */
+        private void cancelPrefetch() {
+            CompletableFuture<Segment> future = next;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * 当前号段耗尽, 切换到预取的号段; 预取未完成时等待, 预取失败时同步重新分配
+         */
+        private synchronized void switchSegment(Segment exhausted) {
+            if (current != exhausted) {
+                //已被其他线程切换
+                return ;
+            }
+            CompletableFuture<Segment> future = next;
+            next = null;
+            Segment segment = null;
+            if (future != null) {
+                try {
+                    segment = future.join();
+                } catch (CompletionException e) {
+                    logger.warn("预取{}的号段失败", bizTag, e.getCause());
+                } catch (CancellationException e) {
+                    //已销毁, 预取被取消
+                }
+            }
+            current = segment != null ? segment : allocate();
+        }
+
+        private Segment allocate() {
+            return new Segment(allocator.allocate(bizTag, step), step);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package gdou.laixiaoming.commonutils.distributed.id;
+
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 基于ZooKeeper的号段分配
+ * 每个业务一个持久节点, 数据为已分配的最大ID, 以节点版本号做乐观锁更新
+ */
+public class ZooKeeperSegmentAllocator implements SegmentAllocator {
+
+    private ZooKeeperConnection connection;
+
+    private String root;
+
+    public ZooKeeperSegmentAllocator(ZooKeeperConnection connection, String root) {
+        this.connection = connection;
+        this.root = root;
+    }
+
+    @Override
+    public long allocate(String bizTag, int step) {
+        String path = root + "/" + bizTag;
+        try {
+            ZooKeeper zk = connection.getZooKeeper();
+            for(; ;){
+                Stat stat = new Stat();
+                byte[] data;
+                try {
+                    data = zk.getData(path, false, stat);
+                } catch (KeeperException.NoNodeException e) {
+                    createIfAbsent(zk, root, "");
+                    createIfAbsent(zk, path, "0");
+                    continue;
+                }
+                long max = Long.parseLong(new String(data, StandardCharsets.UTF_8)) + step;
+                try {
+                    zk.setData(path, String.valueOf(max).getBytes(StandardCharsets.UTF_8), stat.getVersion());
+                    return max;
+                } catch (KeeperException.BadVersionException e) {
+                    // 被其他节点抢先更新, 重试
+                }
+            }
+        } catch (KeeperException e) {
+            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void createIfAbsent(ZooKeeper zk, String path, String data)
+            throws KeeperException, InterruptedException {
+        try {
+            zk.create(path, data.getBytes(StandardCharsets.UTF_8), ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 已被其他客户端创建
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步分布式锁, 等待期间不占用线程, 由定时器和锁释放通知驱动
+ */
+public interface AsyncDistributedLock {
+
+    /**
+     * 非阻塞锁获取
+     * @param lockKey
+     * @param val
+     * @param lockTime 锁占用时间，单位S
+     * @return CompletableFuture<Boolean> 是否获取成功
+     **/
+    CompletableFuture<Boolean> tryLockAsync(String lockKey, String val, int lockTime);
+
+    /**
+     * 异步获取锁，接受超时时间；取消返回的future即放弃等待
+     * @param lockKey
+     * @param val
+     * @param lockTime 锁占用时间，单位S
+     * @param timeout 锁获取超时时间，单位S
+     * @return CompletableFuture<Boolean> 超时前获取成功为true，否则为false
+     **/
+    CompletableFuture<Boolean> lockAsync(String lockKey, String val, int lockTime, int timeout);
+
+    /**
+     * 锁释放
+     * @param lockKey
+     * @return CompletableFuture<Boolean>
+     **/
+    CompletableFuture<Boolean> unlockAsync(String lockKey);
+}
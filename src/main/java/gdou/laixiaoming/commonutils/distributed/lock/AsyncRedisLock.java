@@ -0,0 +1,189 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Redis异步锁
+ * 每次尝试加锁只在命令线程上占用一次往返, 等待期间由锁释放通知或定时器触发下一次尝试, 不占用线程
+ * 加锁结果在完成时计入{@link RedisLock}的监控指标, 与同步加锁共用
+ */
+@Component
+public class AsyncRedisLock implements AsyncDistributedLock, DisposableBean {
+
+    private static final int COMMAND_THREADS = Runtime.getRuntime().availableProcessors() * 2;
+
+    private RedisLock redisLock;
+
+    private RedisLockReleaseSubscriber releaseSubscriber;
+
+    /**
+     * 执行Redis命令
+     */
+    private ExecutorService commandExecutor;
+
+    /**
+     * 兜底重试定时器
+     */
+    private ScheduledExecutorService scheduledExecutorService;
+
+    @Autowired
+    public AsyncRedisLock(RedisLock redisLock, RedisLockReleaseSubscriber releaseSubscriber) {
+        this.redisLock = redisLock;
+        this.releaseSubscriber = releaseSubscriber;
+        this.commandExecutor = Executors.newFixedThreadPool(COMMAND_THREADS,
+                new BasicThreadFactory.Builder().namingPattern("async-redis-lock-%d").daemon(true).build());
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("async-redis-lock-timer").daemon(true).build());
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(String lockKey, String val, int lockTime) {
+        return CompletableFuture.supplyAsync(() -> redisLock.tryLock(lockKey, val, lockTime), commandExecutor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> lockAsync(String lockKey, String val, int lockTime, int timeout) {
+        Acquisition acquisition = new Acquisition(lockKey, val, lockTime,
+                System.currentTimeMillis() + timeout * 1000L);
+        commandExecutor.execute(acquisition);
+        return acquisition.future;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> unlockAsync(String lockKey) {
+        return CompletableFuture.supplyAsync(() -> redisLock.unlock(lockKey), commandExecutor);
+    }
+
+    @Override
+    public void destroy() {
+        scheduledExecutorService.shutdownNow();
+        commandExecutor.shutdownNow();
+    }
+
+    /**
+     * 一次异步加锁过程
+     */
+    private class Acquisition implements Runnable {
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private final String lockKey;
+        private final String val;
+        private final int lockTime;
+        private final long deadline;
+
+        private final long start = System.nanoTime();
+
+        /**
+         * 尝试次数, 各次尝试由重试依次提交到命令线程, 不会并发修改
+         */
+        private int attempts;
+
+        Acquisition(String lockKey, String val, int lockTime, long deadline) {
+            this.lockKey = lockKey;
+            this.val = val;
+            this.lockTime = lockTime;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 在命令线程上尝试一次
+         */
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return ;
+            }
+            attempts++;
+            Retry retry = new Retry(this);
+            //先登记再尝试, 避免错过两者之间的释放事件
+            releaseSubscriber.register(retry.keys, retry);
+            Long ttl;
+            try {
+                ttl = redisLock.tryAcquire(lockKey, val, lockTime);
+            } catch (Exception e) {
+                retry.cancel();
+                future.completeExceptionally(e);
+                return ;
+            }
+            if (ttl == null) {
+                retry.cancel();
+                //先于完成记录, 调用方可能在回调中立即释放
+                redisLock.getStats().acquired(lockKey, start, attempts);
+                if (!future.complete(true)) {
+                    //调用方已取消等待
+                    redisLock.unlock(lockKey);
+                }
+                return ;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                retry.cancel();
+                if (future.complete(false)) {
+                    redisLock.getStats().failed(lockKey, start, attempts);
+                }
+                return ;
+            }
+            retry.schedule(releaseSubscriber.waitTime(ttl, remaining));
+        }
+    }
+
+    /**
+     * 释放通知和定时器二者先到者触发下一次尝试
+     */
+    private class Retry implements Runnable {
+
+        private final Acquisition acquisition;
+        private final Set<String> keys;
+        private final AtomicBoolean fired = new AtomicBoolean();
+        private volatile ScheduledFuture<?> timer;
+
+        Retry(Acquisition acquisition) {
+            this.acquisition = acquisition;
+            this.keys = Collections.singleton(acquisition.lockKey);
+        }
+
+        void schedule(long delay) {
+            timer = scheduledExecutorService.schedule(this, delay, TimeUnit.MILLISECONDS);
+            if (fired.get()) {
+                timer.cancel(false);
+            }
+        }
+
+        /**
+         * 不再重试
+         * @return 是否由本次调用取消
+         */
+        boolean cancel() {
+            if (!fired.compareAndSet(false, true)) {
+                return false;
+            }
+            releaseSubscriber.unregister(keys, this);
+            ScheduledFuture<?> timer = this.timer;
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (cancel()) {
+                commandExecutor.execute(acquisition);
+            }
+        }
+    }
+}
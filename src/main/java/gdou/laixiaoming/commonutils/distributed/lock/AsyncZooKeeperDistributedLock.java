@@ -0,0 +1,199 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ZK异步分布式锁
+ * 基于ZooKeeper的异步回调接口, 加锁、监听前一节点和释放均在ZK事件线程上回调完成, 等待期间不占用线程
+ * 节点布局与{@link ZooKeeperDistributedLock}一致(root/lockKey/顺序节点), 二者可互斥; lockTime不生效, 锁随会话失效而释放
+ * 父节点可能在其他锁释放时被删除, 创建节点时父节点不存在则重建后重试
+ */
+public class AsyncZooKeeperDistributedLock implements AsyncDistributedLock, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncZooKeeperDistributedLock.class);
+
+    /**
+     * 父节点不存在时创建节点的最大尝试次数
+     */
+    private static final int MAX_CREATE_ATTEMPTS = 3;
+
+    private ZooKeeper zk;
+
+    private String root;
+
+    /**
+     * lockKey -> 持有的节点
+     */
+    private final Map<String, ZooKeeperLockNodes.Held> holders = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    public AsyncZooKeeperDistributedLock(ZooKeeper zk, String root) {
+        this.zk = zk;
+        this.root = root;
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("async-zk-lock-timer").daemon(true).build());
+        try {
+            // 创建根节点
+            ZooKeeperLockNodes.createIfAbsent(zk, root);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> tryLockAsync(String lockKey, String val, int lockTime) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        createNode(lockKey, val, future, false);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> lockAsync(String lockKey, String val, int lockTime, int timeout) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        ScheduledFuture<?> timer = scheduledExecutorService.schedule(
+                () -> future.complete(false), timeout, TimeUnit.SECONDS);
+        future.whenComplete((result, e) -> timer.cancel(false));
+        createNode(lockKey, val, future, true);
+        return future;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> unlockAsync(String lockKey) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        ZooKeeperLockNodes.Held held = holders.remove(lockKey);
+        if (held == null) {
+            future.complete(false);
+            return future;
+        }
+        zk.delete(held.node, -1, (rc, path, ctx) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.OK || code == KeeperException.Code.NONODE) {
+                future.complete(true);
+            } else {
+                future.completeExceptionally(KeeperException.create(code, path));
+            }
+        }, null);
+        if (held.alone) {
+            ZooKeeperLockNodes.deleteIfEmpty(zk, root + "/" + lockKey);
+        }
+        return future;
+    }
+
+    private void createNode(String lockKey, String val, CompletableFuture<Boolean> future, boolean wait) {
+        AtomicReference<String> nodeRef = new AtomicReference<>();
+        //超时或被取消后删除已创建的节点
+        future.whenComplete((result, e) -> {
+            if (!Boolean.TRUE.equals(result) && nodeRef.get() != null) {
+                deleteNode(nodeRef.get());
+            }
+        });
+        byte[] data = val == null ? new byte[0] : val.getBytes(StandardCharsets.UTF_8);
+        createChild(lockKey, data, future, wait, nodeRef, 1);
+    }
+
+    /**
+     * 父节点不存在时, 将重建父节点与重试的创建一起流水线发送
+     */
+    private void createChild(String lockKey, byte[] data, CompletableFuture<Boolean> future, boolean wait,
+                             AtomicReference<String> nodeRef, int attempts) {
+        String parent = root + "/" + lockKey;
+        ZooKeeperLockNodes.createNode(zk, parent, ZooKeeperDistributedLock.NODE_PREFIX, data)
+                .whenComplete((name, e) -> {
+                    if (e instanceof KeeperException.NoNodeException && attempts < MAX_CREATE_ATTEMPTS) {
+                        ZooKeeperLockNodes.createParent(zk, parent);
+                        createChild(lockKey, data, future, wait, nodeRef, attempts + 1);
+                        return ;
+                    }
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                        return ;
+                    }
+                    nodeRef.set(name);
+                    if (future.isDone()) {
+                        deleteNode(name);
+                        return ;
+                    }
+                    checkLock(lockKey, name, future, wait);
+                });
+    }
+
+    /**
+     * 当前节点是lockKey下序号最小的节点即获取到锁, 否则监听前一节点
+     */
+    private void checkLock(String lockKey, String node, CompletableFuture<Boolean> future, boolean wait) {
+        if (future.isDone()) {
+            return ;
+        }
+        String parent = root + "/" + lockKey;
+        ZooKeeperLockNodes.getChildren(zk, parent).whenComplete((children, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+                return ;
+            }
+            String preNode = ZooKeeperDistributedLock.preNodeOf(node, children);
+            if (preNode == null) {
+                //先登记持有者再完成, 调用方在回调中即可释放
+                ZooKeeperLockNodes.Held held = new ZooKeeperLockNodes.Held(node, children);
+                holders.put(lockKey, held);
+                if (!future.complete(true)) {
+                    holders.remove(lockKey, held);
+                }
+                return ;
+            }
+            if (!wait) {
+                future.complete(false);
+                return ;
+            }
+            watchPreNode(lockKey, node, parent + "/" + preNode, future);
+        });
+    }
+
+    private void watchPreNode(String lockKey, String node, String preNode, CompletableFuture<Boolean> future) {
+        Watcher watcher = event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                checkLock(lockKey, node, future, true);
+            } else if (event.getState() == Watcher.Event.KeeperState.Expired) {
+                future.completeExceptionally(new KeeperException.SessionExpiredException());
+            }
+        };
+        zk.exists(preNode, watcher, (rc, path, ctx, stat) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.NONODE) {
+                //前一节点已删除, 重新检查
+                checkLock(lockKey, node, future, true);
+            } else if (code != KeeperException.Code.OK) {
+                future.completeExceptionally(KeeperException.create(code, path));
+            }
+        }, null);
+    }
+
+    private void deleteNode(String node) {
+        zk.delete(node, -1, (rc, path, ctx) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK && code != KeeperException.Code.NONODE) {
+                logger.warn("删除节点{}失败: {}", path, code);
+            }
+        }, null);
+    }
+
+    @Override
+    public void close() {
+        scheduledExecutorService.shutdownNow();
+    }
+}
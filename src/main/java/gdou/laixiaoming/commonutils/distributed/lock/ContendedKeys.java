@@ -0,0 +1,116 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 竞争最激烈的lockKey统计(Space-Saving算法)
+ * 固定数量的计数槽, 槽满时替换计数最小的key并继承其计数, 内存有界; 计数可能偏大, 偏差不超过被替换的计数
+ * 计数槽按key的hash分为若干段, 每段独立统计, 记录时只扫描所在段并以CAS更新, 不加锁、不创建对象;
+ * 替换槽位的同时对原key的计数会计入新key, 偏差同样记在error中
+ */
+public class ContendedKeys {
+
+    private static final int STRIPES = 8;
+
+    private final int stripeSize;
+
+    private final AtomicReferenceArray<String> keys;
+    private final AtomicLongArray counts;
+    private final AtomicLongArray errors;
+
+    public ContendedKeys(int capacity) {
+        this.stripeSize = Math.max(capacity / STRIPES, 1);
+        this.keys = new AtomicReferenceArray<>(stripeSize * STRIPES);
+        this.counts = new AtomicLongArray(stripeSize * STRIPES);
+        this.errors = new AtomicLongArray(stripeSize * STRIPES);
+    }
+
+    /**
+     * 记录一次竞争, 仅在加锁需要等待或失败时调用
+     */
+    public void record(String lockKey) {
+        int from = stripeOf(lockKey) * stripeSize;
+        int to = from + stripeSize;
+        for(; ;){
+            int min = from;
+            for (int i = from; i < to; i++) {
+                String key = keys.get(i);
+                if (key == null) {
+                    //空槽的计数为0, 占用后直接累加
+                    if (keys.compareAndSet(i, null, lockKey)) {
+                        counts.incrementAndGet(i);
+                        return ;
+                    }
+                    key = keys.get(i);
+                }
+                if (key.equals(lockKey)) {
+                    counts.incrementAndGet(i);
+                    return ;
+                }
+                if (counts.get(i) < counts.get(min)) {
+                    min = i;
+                }
+            }
+            String evicted = keys.get(min);
+            if (keys.compareAndSet(min, evicted, lockKey)) {
+                errors.set(min, counts.getAndIncrement(min));
+                return ;
+            }
+            //槽位已被其他线程替换, 重新扫描
+        }
+    }
+
+    /**
+     * @return 按竞争次数降序
+     */
+    public List<Entry> snapshot() {
+        List<Entry> entries = new ArrayList<>(keys.length());
+        for (int i = 0; i < keys.length(); i++) {
+            String key = keys.get(i);
+            if (key != null) {
+                entries.add(new Entry(key, counts.get(i), errors.get(i)));
+            }
+        }
+        entries.sort(Comparator.comparingLong(Entry::getCount).reversed());
+        return entries;
+    }
+
+    private static int stripeOf(String lockKey) {
+        int h = lockKey.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    public static class Entry {
+
+        private final String lockKey;
+
+        private final long count;
+
+        /**
+         * 计数的最大偏差
+         */
+        private final long error;
+
+        Entry(String lockKey, long count, long error) {
+            this.lockKey = lockKey;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getLockKey() {
+            return lockKey;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package gdou.laixiaoming.commonutils.distributed.lock;
 
+import java.util.Collection;
+
 public interface DistributedLock {
 
+    /**
+     * lockTime传入该值时使用默认租期, 持有期间由看门狗自动续期, 释放锁后停止续期
+     */
+    int WATCHDOG_LOCK_TIME = -1;
+
     /**
      * 非阻塞锁获取
      * @Author laiminghai
      * @Date 16:14 2019/09/16
      * @param lockKey
      * @param val
-     * @param lockTime
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
      * @return boolean
      **/
     boolean tryLock(String lockKey, String val, int lockTime);
@@ -19,7 +26,7 @@ public interface DistributedLock {
      * @Date 16:15 2019/09/16
      * @param lockKey
      * @param val
-     * @param lockTime 锁占用时间，单位S
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
      * @return void
      **/
     void lock(String lockKey, String val, int lockTime) throws InterruptedException;
@@ -30,7 +37,7 @@ public interface DistributedLock {
      * @Date 16:15 2019/09/16
      * @param lockKey
      * @param val
-     * @param lockTime 锁占用时间，单位S
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
      * @param timeout 锁获取超时时间，单位S
      * @return boolean
      **/
@@ -44,4 +51,39 @@ public interface DistributedLock {
      * @return boolean
      **/
     boolean unlock(String lockKey);
+
+    /**
+     * 非阻塞批量获取锁，全部获取成功或全部失败
+     * @param lockKeys
+     * @param val
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
+     * @return boolean
+     **/
+    boolean tryLock(Collection<String> lockKeys, String val, int lockTime);
+
+    /**
+     * 阻塞批量获取锁，直到全部获取成功
+     * @param lockKeys
+     * @param val
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
+     * @return void
+     **/
+    void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException;
+
+    /**
+     * 阻塞批量获取锁，接受超时时间，超时后不持有其中任何一个锁
+     * @param lockKeys
+     * @param val
+     * @param lockTime 锁占用时间，单位S，传入{@link #WATCHDOG_LOCK_TIME}时自动续期
+     * @param timeout 锁获取超时时间，单位S
+     * @return boolean
+     **/
+    boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException;
+
+    /**
+     * 批量锁释放
+     * @param lockKeys
+     * @return boolean 全部释放成功返回true
+     **/
+    boolean unlock(Collection<String> lockKeys);
 }
@@ -0,0 +1,295 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis公平锁
+ * 等待者按到达顺序进入服务端队列, 锁释放后严格按队列顺序交给下一个等待者;
+ * 每个等待者在队列中有存活期限, 需在期限内重试刷新, 否则视为已放弃并被移出队列
+ * 注意: val用于标识队列中的等待者, 每次加锁需使用不同的val
+ */
+@Component
+public class FairRedisLock implements DistributedLock {
+
+    private static final Long UNLOCK_SUCCESS_FLAG = 1L;
+
+    /**
+     * 等待者在队列中的存活期限(ms)
+     */
+    private static final long WAITER_TIMEOUT = 5000;
+
+    private static final String QUEUE_SUFFIX = ":queue";
+    private static final String TIMEOUT_SUFFIX = ":timeout";
+
+    /**
+     * KEYS[1]: 锁, KEYS[2]: 等待队列(list), KEYS[3]: 等待者存活期限(zset)
+     * ARGV[1]: 持有者, ARGV[2]: 锁占用时间(s), ARGV[3]: 等待者存活期限(ms), ARGV[4]: 当前时间(ms), ARGV[5]: 失败时是否入队
+     * 成功返回nil, 否则返回建议的等待时间(ms)
+     */
+    private static final String LOCK_SCRIPT =
+            //清理队首已超时的等待者
+            "while true do " +
+            "local first = redis.call('lindex', KEYS[2], 0) " +
+            "if first == false then break end " +
+            "local deadline = redis.call('zscore', KEYS[3], first) " +
+            "if deadline ~= false and tonumber(deadline) >= tonumber(ARGV[4]) then break end " +
+            "redis.call('lpop', KEYS[2]) " +
+            "redis.call('zrem', KEYS[3], first) " +
+            "end " +
+            "local first = redis.call('lindex', KEYS[2], 0) " +
+            "if redis.call('exists', KEYS[1]) == 0 and (first == false or first == ARGV[1]) then " +
+            "if first == ARGV[1] then " +
+            "redis.call('lpop', KEYS[2]) " +
+            "redis.call('zrem', KEYS[3], ARGV[1]) " +
+            "end " +
+            "redis.call('set', KEYS[1], ARGV[1], 'EX', ARGV[2]) " +
+            "return nil end " +
+            "if ARGV[5] == '1' then " +
+            "if redis.call('zscore', KEYS[3], ARGV[1]) == false then redis.call('rpush', KEYS[2], ARGV[1]) end " +
+            "redis.call('zadd', KEYS[3], tonumber(ARGV[4]) + tonumber(ARGV[3]), ARGV[1]) " +
+            //等待者全部异常退出时队列自动过期
+            "redis.call('pexpire', KEYS[2], ARGV[3]) " +
+            "redis.call('pexpire', KEYS[3], ARGV[3]) " +
+            "end " +
+            "local ttl = redis.call('pttl', KEYS[1]) " +
+            "if ttl >= 0 then return ttl end " +
+            //锁空闲但未轮到自己, 最多等到队首等待者超时
+            "if first ~= false and first ~= ARGV[1] then " +
+            "return math.max(tonumber(redis.call('zscore', KEYS[3], first)) - tonumber(ARGV[4]), 0) end " +
+            "return ttl";
+
+    /**
+     * 放弃等待, 移出队列; 若锁空闲则通知下一个等待者
+     */
+    private static final String CANCEL_SCRIPT =
+            "redis.call('lrem', KEYS[2], 0, ARGV[1]) " +
+            "redis.call('zrem', KEYS[3], ARGV[1]) " +
+            "if redis.call('exists', KEYS[1]) == 0 then redis.call('publish', ARGV[2], KEYS[1]) end " +
+            "return 1";
+
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('del', KEYS[1]) == 1 then " +
+            "redis.call('publish', ARGV[1], KEYS[1]) " +
+            "return 1 end " +
+            "return 0";
+
+    private RedisScriptExecutor scriptExecutor;
+
+    private RedisLockReleaseSubscriber releaseSubscriber;
+
+    private RedisLockWatchdog watchdog;
+
+    private LockStats stats;
+
+    @Autowired
+    public FairRedisLock(RedisScriptExecutor scriptExecutor, RedisLockReleaseSubscriber releaseSubscriber,
+                         RedisLockWatchdog watchdog, LockMetrics lockMetrics) {
+        this.scriptExecutor = scriptExecutor;
+        this.releaseSubscriber = releaseSubscriber;
+        this.watchdog = watchdog;
+        this.stats = lockMetrics.stats("fair-redis");
+    }
+
+    /**
+     * 非阻塞获取锁, 仅在锁空闲且无人排队时成功, 失败时不入队
+     */
+    @Override
+    public boolean tryLock(String lockKey, String val, int lockTime) {
+        long start = System.nanoTime();
+        if (doLock(lockKey, val, lockTime, false) == null) {
+            afterLocked(lockKey, val, lockTime);
+            stats.acquired(lockKey, start, 1);
+            return true;
+        }
+        stats.failed(lockKey, start, 1);
+        return false;
+    }
+
+    @Override
+    public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
+        long start = System.nanoTime();
+        boolean locked = false;
+        try {
+            for(int attempts = 1; ; attempts++){
+                CountDownLatch latch = releaseSubscriber.register(lockKey);
+                try {
+                    Long ttl = doLock(lockKey, val, lockTime, true);
+                    if (ttl == null) {
+                        afterLocked(lockKey, val, lockTime);
+                        stats.acquired(lockKey, start, attempts);
+                        locked = true;
+                        return ;
+                    }
+                    latch.await(waitTime(ttl, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+                } finally {
+                    releaseSubscriber.unregister(lockKey, latch);
+                }
+            }
+        } finally {
+            if (!locked) {
+                cancel(lockKey, val);
+            }
+        }
+    }
+
+    @Override
+    public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        boolean locked = false;
+        try {
+            for(int attempts = 1; ; attempts++){
+                CountDownLatch latch = releaseSubscriber.register(lockKey);
+                try {
+                    Long ttl = doLock(lockKey, val, lockTime, true);
+                    if (ttl == null) {
+                        afterLocked(lockKey, val, lockTime);
+                        stats.acquired(lockKey, start, attempts);
+                        locked = true;
+                        return true;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        stats.failed(lockKey, start, attempts);
+                        return false;
+                    }
+                    latch.await(waitTime(ttl, remaining), TimeUnit.MILLISECONDS);
+                } finally {
+                    releaseSubscriber.unregister(lockKey, latch);
+                }
+            }
+        } finally {
+            if (!locked) {
+                cancel(lockKey, val);
+            }
+        }
+    }
+
+    @Override
+    public boolean unlock(String lockKey) {
+        watchdog.unwatch(lockKey);
+        Long result;
+        try {
+            result = scriptExecutor.eval(UNLOCK_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                    Collections.singletonList(lockKey),
+                    Collections.singletonList(RedisLockReleaseSubscriber.channelOf(lockKey)));
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+        stats.released(lockKey);
+        return UNLOCK_SUCCESS_FLAG.equals(result);
+    }
+
+    /**
+     * 批量获取锁, 按key的顺序逐个获取, 任意一个失败则释放已获取的锁
+     */
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        List<String> locked = new ArrayList<>();
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            if (!tryLock(lockKey, val, lockTime)) {
+                unlock(locked);
+                return false;
+            }
+            locked.add(lockKey);
+        }
+        return true;
+    }
+
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        List<String> locked = new ArrayList<>();
+        try {
+            //固定加锁顺序避免死锁
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                lock(lockKey, val, lockTime);
+                locked.add(lockKey);
+            }
+            locked.clear();
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        List<String> locked = new ArrayList<>();
+        try {
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                long remaining = deadline - System.currentTimeMillis();
+                int remainingSeconds = (int) Math.max((remaining + 999) / 1000, 0);
+                if (!lock(lockKey, val, lockTime, remainingSeconds)) {
+                    return false;
+                }
+                locked.add(lockKey);
+            }
+            locked.clear();
+            return true;
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        boolean result = true;
+        for (String lockKey : lockKeys) {
+            result &= unlock(lockKey);
+        }
+        return result;
+    }
+
+    private Long doLock(String lockKey, String val, int lockTime, boolean enqueue) {
+        try {
+            return scriptExecutor.eval(LOCK_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                    keysOf(lockKey),
+                    Arrays.asList(val,
+                            String.valueOf(leaseTime(lockTime)),
+                            String.valueOf(WAITER_TIMEOUT),
+                            String.valueOf(System.currentTimeMillis()),
+                            enqueue ? "1" : "0"));
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+    }
+
+    private void cancel(String lockKey, String val) {
+        scriptExecutor.eval(CANCEL_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                keysOf(lockKey),
+                Arrays.asList(val, RedisLockReleaseSubscriber.channelOf(lockKey)));
+    }
+
+    /**
+     * 等待时间不超过等待者存活期限的一半, 保证按时刷新自己在队列中的位置
+     */
+    private long waitTime(long ttl, long remaining) {
+        return releaseSubscriber.waitTime(ttl, Math.min(remaining, WAITER_TIMEOUT / 2));
+    }
+
+    private int leaseTime(int lockTime) {
+        return lockTime == WATCHDOG_LOCK_TIME ? watchdog.getLeaseTime() : lockTime;
+    }
+
+    private void afterLocked(String lockKey, String val, int lockTime) {
+        if (lockTime == WATCHDOG_LOCK_TIME) {
+            watchdog.watch(lockKey, val);
+        }
+    }
+
+    private static List<String> keysOf(String lockKey) {
+        return Arrays.asList(lockKey, lockKey + QUEUE_SUFFIX, lockKey + TIMEOUT_SUFFIX);
+    }
+}
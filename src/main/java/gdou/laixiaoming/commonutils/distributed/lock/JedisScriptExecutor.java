@@ -0,0 +1,26 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.List;
+
+/**
+ * 基于Jedis连接池的阻塞后端, 每条命令借用一个连接
+ */
+public class JedisScriptExecutor implements RedisScriptExecutor {
+
+    private JedisPool jedisPool;
+
+    public JedisScriptExecutor(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T eval(String script, ReturnType returnType, List<String> keys, List<String> args) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            return (T) jedis.eval(script, keys, args);
+        }
+    }
+}
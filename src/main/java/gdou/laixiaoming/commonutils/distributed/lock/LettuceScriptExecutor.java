@@ -0,0 +1,55 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于Lettuce(Netty)的非阻塞后端
+ * 少量长连接由所有线程共享, 并发发出的命令在同一连接上流水线发送, 不再按命令占用连接
+ */
+public class LettuceScriptExecutor implements RedisScriptExecutor, DisposableBean {
+
+    private RedisClient redisClient;
+
+    private final List<StatefulRedisConnection<String, String>> connections;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param redisClient
+     * @param connectionCount 共享连接数
+     */
+    public LettuceScriptExecutor(RedisClient redisClient, int connectionCount) {
+        this.redisClient = redisClient;
+        int count = Math.max(connectionCount, 1);
+        this.connections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            connections.add(redisClient.connect());
+        }
+    }
+
+    private StatefulRedisConnection<String, String> getConnection() {
+        return connections.get((next.getAndIncrement() & Integer.MAX_VALUE) % connections.size());
+    }
+
+    @Override
+    public <T> T eval(String script, ReturnType returnType, List<String> keys, List<String> args) {
+        ScriptOutputType outputType = returnType == ReturnType.MULTI ? ScriptOutputType.MULTI : ScriptOutputType.INTEGER;
+        return getConnection().sync().eval(script, outputType,
+                keys.toArray(new String[0]), args.toArray(new String[0]));
+    }
+
+    @Override
+    public void destroy() {
+        for (StatefulRedisConnection<String, String> connection : connections) {
+            connection.close();
+        }
+        redisClient.shutdown();
+    }
+}
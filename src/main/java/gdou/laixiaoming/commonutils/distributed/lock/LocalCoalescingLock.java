@@ -0,0 +1,295 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 本地排队的分布式锁
+ * 同一JVM内竞争同一lockKey的线程先在该key的本地锁上按顺序排队, 每个key只有队首线程去竞争分布式锁,
+ * 获取到分布式锁后立即释放本地锁, 下一个线程再去等待分布式锁
+ * 本地锁只在获取分布式锁的过程中持有, 因此加锁和释放可以在不同线程中进行, 不同key之间也不会相互阻塞
+ * 已持有锁的val再次加锁(如{@link ReentrantRedisLock}重入)时不经过本地排队, 以免与持有本地锁等待它释放的队首线程互相等待
+ */
+public class LocalCoalescingLock implements DistributedLock {
+
+    private DistributedLock distributedLock;
+
+    /**
+     * lockKey -> 本地排队, 没有线程在排队时移除
+     */
+    private final Map<String, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * lockKey -> 经本实例获取到锁的持有者, 全部释放后移除
+     */
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+
+    public LocalCoalescingLock(DistributedLock distributedLock) {
+        this.distributedLock = distributedLock;
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, String val, int lockTime) {
+        if (isHeldBy(lockKey, val)) {
+            return acquired(lockKey, val, distributedLock.tryLock(lockKey, val, lockTime));
+        }
+        KeyQueue queue = enter(lockKey);
+        try {
+            if (!queue.lock.tryLock()) {
+                return false;
+            }
+            try {
+                return acquired(lockKey, val, distributedLock.tryLock(lockKey, val, lockTime));
+            } finally {
+                queue.lock.unlock();
+            }
+        } finally {
+            leave(lockKey);
+        }
+    }
+
+    @Override
+    public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
+        if (isHeldBy(lockKey, val)) {
+            distributedLock.lock(lockKey, val, lockTime);
+            acquired(lockKey, val, true);
+            return ;
+        }
+        KeyQueue queue = enter(lockKey);
+        try {
+            queue.lock.lockInterruptibly();
+            try {
+                distributedLock.lock(lockKey, val, lockTime);
+                acquired(lockKey, val, true);
+            } finally {
+                queue.lock.unlock();
+            }
+        } finally {
+            leave(lockKey);
+        }
+    }
+
+    @Override
+    public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        if (isHeldBy(lockKey, val)) {
+            return acquired(lockKey, val, distributedLock.lock(lockKey, val, lockTime, timeout));
+        }
+        KeyQueue queue = enter(lockKey);
+        try {
+            //不带超时的tryLock会插队, 以0超时保持公平
+            boolean waited = !queue.lock.tryLock(0, TimeUnit.SECONDS);
+            if (waited && !queue.lock.tryLock(timeout, TimeUnit.SECONDS)) {
+                return false;
+            }
+            try {
+                int remaining = waited ? remainingSeconds(deadline, timeout) : timeout;
+                return remaining >= 0
+                        && acquired(lockKey, val, distributedLock.lock(lockKey, val, lockTime, remaining));
+            } finally {
+                queue.lock.unlock();
+            }
+        } finally {
+            leave(lockKey);
+        }
+    }
+
+    @Override
+    public boolean unlock(String lockKey) {
+        boolean result = distributedLock.unlock(lockKey);
+        if (result) {
+            released(lockKey);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        List<String> entered = new ArrayList<>();
+        List<KeyQueue> locked = new ArrayList<>();
+        try {
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                if (isHeldBy(lockKey, val)) {
+                    continue;
+                }
+                KeyQueue queue = enter(lockKey);
+                entered.add(lockKey);
+                if (!queue.lock.tryLock()) {
+                    return false;
+                }
+                locked.add(queue);
+            }
+            return acquired(lockKeys, val, distributedLock.tryLock(lockKeys, val, lockTime));
+        } finally {
+            release(entered, locked);
+        }
+    }
+
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        List<String> entered = new ArrayList<>();
+        List<KeyQueue> locked = new ArrayList<>();
+        try {
+            //固定加锁顺序避免死锁
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                if (isHeldBy(lockKey, val)) {
+                    continue;
+                }
+                KeyQueue queue = enter(lockKey);
+                entered.add(lockKey);
+                queue.lock.lockInterruptibly();
+                locked.add(queue);
+            }
+            distributedLock.lock(lockKeys, val, lockTime);
+            acquired(lockKeys, val, true);
+        } finally {
+            release(entered, locked);
+        }
+    }
+
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        List<String> entered = new ArrayList<>();
+        List<KeyQueue> locked = new ArrayList<>();
+        boolean waited = false;
+        try {
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                if (isHeldBy(lockKey, val)) {
+                    continue;
+                }
+                KeyQueue queue = enter(lockKey);
+                entered.add(lockKey);
+                if (!queue.lock.tryLock(0, TimeUnit.SECONDS)) {
+                    waited = true;
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (!queue.lock.tryLock(Math.max(remaining, 0), TimeUnit.MILLISECONDS)) {
+                        return false;
+                    }
+                }
+                locked.add(queue);
+            }
+            int remaining = waited ? remainingSeconds(deadline, timeout) : timeout;
+            return remaining >= 0
+                    && acquired(lockKeys, val, distributedLock.lock(lockKeys, val, lockTime, remaining));
+        } finally {
+            release(entered, locked);
+        }
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        boolean result = distributedLock.unlock(lockKeys);
+        //批量释放不区分各key的结果, 逐个减少本地持有次数
+        for (String lockKey : lockKeys) {
+            released(lockKey);
+        }
+        return result;
+    }
+
+    /**
+     * 进入lockKey的本地排队, 与{@link #leave(String)}成对调用
+     */
+    private KeyQueue enter(String lockKey) {
+        return queues.compute(lockKey, (key, queue) -> {
+            if (queue == null) {
+                queue = new KeyQueue();
+            }
+            queue.refs++;
+            return queue;
+        });
+    }
+
+    private void leave(String lockKey) {
+        queues.computeIfPresent(lockKey, (key, queue) -> --queue.refs == 0 ? null : queue);
+    }
+
+    private void release(List<String> entered, List<KeyQueue> locked) {
+        for (KeyQueue queue : locked) {
+            queue.lock.unlock();
+        }
+        for (String lockKey : entered) {
+            leave(lockKey);
+        }
+    }
+
+    private boolean isHeldBy(String lockKey, String val) {
+        Holder holder = holders.get(lockKey);
+        return holder != null && Objects.equals(holder.val, val);
+    }
+
+    /**
+     * 获取成功时记录持有者, 持有者变化(如原持有者的锁已过期)时以新持有者为准
+     */
+    private boolean acquired(String lockKey, String val, boolean locked) {
+        if (locked) {
+            holders.compute(lockKey, (key, holder) -> {
+                if (holder == null || !Objects.equals(holder.val, val)) {
+                    holder = new Holder(val);
+                }
+                holder.count++;
+                return holder;
+            });
+        }
+        return locked;
+    }
+
+    private boolean acquired(Collection<String> lockKeys, String val, boolean locked) {
+        if (locked) {
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                acquired(lockKey, val, true);
+            }
+        }
+        return locked;
+    }
+
+    private void released(String lockKey) {
+        holders.computeIfPresent(lockKey, (key, holder) -> --holder.count == 0 ? null : holder);
+    }
+
+    /**
+     * 在本地排队等待后剩余的超时时间, 向下取整到秒, 不超过调用方的截止时间; 不足一秒时为0, 分布式锁只尝试一次
+     * @return 有超时时间且已用尽时返回-1
+     */
+    private static int remainingSeconds(long deadline, int timeout) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return timeout > 0 ? -1 : 0;
+        }
+        return (int) (remaining / 1000);
+    }
+
+    private static class KeyQueue {
+
+        /**
+         * 公平锁, 本地等待者按到达顺序获取分布式锁
+         */
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        /**
+         * 排队中的线程数, 只在compute中修改
+         */
+        private int refs;
+    }
+
+    private static class Holder {
+
+        private final String val;
+
+        /**
+         * 持有次数, 只在compute中修改
+         */
+        private int count;
+
+        private Holder(String val) {
+            this.val = val;
+        }
+    }
+}
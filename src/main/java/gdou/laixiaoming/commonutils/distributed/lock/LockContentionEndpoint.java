@@ -0,0 +1,36 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 竞争最激烈的lockKey, 访问/actuator/lockcontention
+ */
+@Component
+@Endpoint(id = "lockcontention")
+public class LockContentionEndpoint {
+
+    private static final int DEFAULT_TOP = 10;
+
+    private LockMetrics lockMetrics;
+
+    @Autowired
+    public LockContentionEndpoint(LockMetrics lockMetrics) {
+        this.lockMetrics = lockMetrics;
+    }
+
+    @ReadOperation
+    public List<ContendedKeys.Entry> contendedKeys() {
+        return lockMetrics.topContendedKeys(DEFAULT_TOP);
+    }
+
+    @ReadOperation
+    public List<ContendedKeys.Entry> contendedKeys(@Selector int top) {
+        return lockMetrics.topContendedKeys(top);
+    }
+}
@@ -0,0 +1,59 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 分布式锁监控指标
+ * 按锁类型区分, 指标不以lockKey为标签以免标签膨胀; 竞争最激烈的lockKey单独以有界内存统计
+ */
+@Component
+public class LockMetrics {
+
+    /**
+     * 不接入注册中心, 供未由Spring创建的锁使用
+     */
+    public static final LockMetrics NOOP = new LockMetrics(new CompositeMeterRegistry());
+
+    /**
+     * 竞争统计的最大key数量
+     */
+    private static final int CONTENDED_KEY_CAPACITY = 128;
+
+    private MeterRegistry registry;
+
+    private final Map<String, LockStats> stats = new ConcurrentHashMap<>();
+
+    private final ContendedKeys contendedKeys = new ContendedKeys(CONTENDED_KEY_CAPACITY);
+
+    @Autowired
+    public LockMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 获取某类锁的指标, 锁实例在构造时获取并持有
+     * @param type 锁类型, 如redis、zookeeper
+     * @return
+     */
+    public LockStats stats(String type) {
+        return stats.computeIfAbsent(type, t -> new LockStats(t, registry, contendedKeys));
+    }
+
+    /**
+     * 竞争次数最多的lockKey, 按次数降序
+     * @param n
+     * @return
+     */
+    public List<ContendedKeys.Entry> topContendedKeys(int n) {
+        List<ContendedKeys.Entry> entries = contendedKeys.snapshot();
+        return new ArrayList<>(entries.subList(0, Math.min(n, entries.size())));
+    }
+}
@@ -0,0 +1,179 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 某类锁的监控指标
+ * 记录时只做计时器/计数器的原子更新, 不创建对象; 持有时长使用固定大小的开放寻址表记录加锁时间
+ */
+public class LockStats {
+
+    private static final int HOLD_SLOTS = 1024;
+    private static final int MAX_PROBES = 8;
+
+    private final Timer acquiredTimer;
+    private final Timer failedTimer;
+    private final DistributionSummary attemptsSummary;
+    private final Timer holdTimer;
+    private final Counter errorCounter;
+
+    private final ContendedKeys contendedKeys;
+
+    /**
+     * 持有中的lockKey及加锁时间(ns)
+     * 锁过期未释放时槽位不会被清理, 探测范围内无空槽时替换最早加锁的槽位
+     */
+    private final AtomicReferenceArray<String> holdKeys = new AtomicReferenceArray<>(HOLD_SLOTS);
+    private final AtomicLongArray holdStarts = new AtomicLongArray(HOLD_SLOTS);
+
+    LockStats(String type, MeterRegistry registry, ContendedKeys contendedKeys) {
+        this.contendedKeys = contendedKeys;
+        this.acquiredTimer = acquireTimer(type, "acquired", registry);
+        this.failedTimer = acquireTimer(type, "failed", registry);
+        this.attemptsSummary = DistributionSummary.builder("distributed.lock.attempts")
+                .description("每次加锁的尝试次数")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .maximumExpectedValue(1000L)
+                .register(registry);
+        this.holdTimer = Timer.builder("distributed.lock.hold")
+                .description("锁的持有时长")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+        this.errorCounter = Counter.builder("distributed.lock.errors")
+                .description("加锁/释放锁时的异常次数")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private static Timer acquireTimer(String type, String result, MeterRegistry registry) {
+        return Timer.builder("distributed.lock.acquire")
+                .description("加锁的等待耗时")
+                .tag("type", type)
+                .tag("result", result)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+    }
+
+    /**
+     * 加锁成功
+     * @param lockKey
+     * @param startNanos 开始加锁的时间, {@link System#nanoTime()}
+     * @param attempts 尝试次数
+     */
+    public void acquired(String lockKey, long startNanos, int attempts) {
+        long now = System.nanoTime();
+        acquiredTimer.record(now - startNanos, TimeUnit.NANOSECONDS);
+        attemptsSummary.record(attempts);
+        if (attempts > 1) {
+            contendedKeys.record(lockKey);
+        }
+        holdStart(lockKey, now);
+    }
+
+    public void acquired(List<String> lockKeys, long startNanos, int attempts) {
+        long now = System.nanoTime();
+        acquiredTimer.record(now - startNanos, TimeUnit.NANOSECONDS);
+        attemptsSummary.record(attempts);
+        for (int i = 0; i < lockKeys.size(); i++) {
+            if (attempts > 1) {
+                contendedKeys.record(lockKeys.get(i));
+            }
+            holdStart(lockKeys.get(i), now);
+        }
+    }
+
+    /**
+     * 未获取到锁(非阻塞加锁失败或等待超时)
+     */
+    public void failed(String lockKey, long startNanos, int attempts) {
+        failedTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        attemptsSummary.record(attempts);
+        contendedKeys.record(lockKey);
+    }
+
+    public void failed(List<String> lockKeys, long startNanos, int attempts) {
+        failedTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        attemptsSummary.record(attempts);
+        for (int i = 0; i < lockKeys.size(); i++) {
+            contendedKeys.record(lockKeys.get(i));
+        }
+    }
+
+    public void error() {
+        errorCounter.increment();
+    }
+
+    /**
+     * 锁已释放(重入锁需在持有次数归零后调用)
+     */
+    public void released(String lockKey) {
+        int slot = slotOf(lockKey);
+        for (int i = 0; i < MAX_PROBES; i++, slot = nextSlot(slot)) {
+            String key = holdKeys.get(slot);
+            if (key != null && key.equals(lockKey)) {
+                long start = holdStarts.get(slot);
+                if (holdKeys.compareAndSet(slot, key, null)) {
+                    holdTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+                return ;
+            }
+        }
+    }
+
+    public void released(List<String> lockKeys) {
+        for (int i = 0; i < lockKeys.size(); i++) {
+            released(lockKeys.get(i));
+        }
+    }
+
+    private void holdStart(String lockKey, long now) {
+        int first = slotOf(lockKey);
+        int slot = first;
+        int oldest = first;
+        for (int i = 0; i < MAX_PROBES; i++, slot = nextSlot(slot)) {
+            String key = holdKeys.get(slot);
+            if (key != null && key.equals(lockKey)) {
+                //重入, 保留首次加锁时间
+                return ;
+            }
+            if (key != null && holdStarts.get(slot) - holdStarts.get(oldest) < 0) {
+                oldest = slot;
+            }
+        }
+        slot = first;
+        for (int i = 0; i < MAX_PROBES; i++, slot = nextSlot(slot)) {
+            if (holdKeys.compareAndSet(slot, null, lockKey)) {
+                holdStarts.set(slot, now);
+                return ;
+            }
+        }
+        String evicted = holdKeys.get(oldest);
+        if (evicted != null && holdKeys.compareAndSet(oldest, evicted, lockKey)) {
+            holdStarts.set(oldest, now);
+        }
+    }
+
+    private static int slotOf(String lockKey) {
+        int h = lockKey.hashCode();
+        return (h ^ (h >>> 16)) & (HOLD_SLOTS - 1);
+    }
+
+    private static int nextSlot(int slot) {
+        return (slot + 1) & (HOLD_SLOTS - 1);
+    }
+}
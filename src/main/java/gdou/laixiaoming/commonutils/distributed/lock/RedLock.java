@@ -0,0 +1,261 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 多节点Redis锁(Redlock)
+ * 向N个相互独立的Redis节点并行加锁, 在有效期内获得多数节点即认为加锁成功, 有效期扣除加锁耗时和时钟漂移
+ * 注意: 不支持{@link #WATCHDOG_LOCK_TIME}自动续期; 锁由本实例记录持有者, 释放时校验持有者
+ */
+public class RedLock implements DistributedLock, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedLock.class);
+
+    /**
+     * 时钟漂移系数
+     */
+    private static final double CLOCK_DRIFT_FACTOR = 0.01;
+    private static final long MIN_RETRY_DELAY = 50;
+    private static final long MAX_RETRY_DELAY = 200;
+
+    /**
+     * 全部key都空闲时才加锁, 成功返回1
+     */
+    private static final String LOCK_SCRIPT =
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('exists', key) == 1 then return 0 end " +
+            "end " +
+            "for i, key in ipairs(KEYS) do " +
+            "redis.call('set', key, ARGV[1], 'PX', ARGV[2]) " +
+            "end " +
+            "return 1";
+
+    /**
+     * 只删除自己持有的key
+     */
+    private static final String UNLOCK_SCRIPT =
+            "local count = 0 " +
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('get', key) == ARGV[1] then " +
+            "redis.call('del', key) " +
+            "count = count + 1 end " +
+            "end " +
+            "return count";
+
+    private List<JedisPool> jedisPools;
+
+    private long nodeTimeout;
+
+    private int quorum;
+
+    /**
+     * lockKey -> 持有者
+     */
+    private final Map<String, String> holders = new ConcurrentHashMap<>();
+
+    private ExecutorService executorService;
+
+    private LockStats stats;
+
+    /**
+     * @param jedisPools 相互独立的Redis节点
+     * @param nodeTimeout 单个节点的操作超时时间(ms), 应远小于锁占用时间
+     */
+    public RedLock(List<JedisPool> jedisPools, long nodeTimeout) {
+        this(jedisPools, nodeTimeout, LockMetrics.NOOP);
+    }
+
+    public RedLock(List<JedisPool> jedisPools, long nodeTimeout, LockMetrics lockMetrics) {
+        this.jedisPools = jedisPools;
+        this.stats = lockMetrics.stats("redlock");
+        this.nodeTimeout = nodeTimeout;
+        this.quorum = jedisPools.size() / 2 + 1;
+        this.executorService = Executors.newCachedThreadPool(
+                new BasicThreadFactory.Builder().namingPattern("redlock-%d").daemon(true).build());
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, String val, int lockTime) {
+        return tryLock(Collections.singletonList(lockKey), val, lockTime);
+    }
+
+    @Override
+    public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
+        lock(Collections.singletonList(lockKey), val, lockTime);
+    }
+
+    @Override
+    public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        return lock(Collections.singletonList(lockKey), val, lockTime, timeout);
+    }
+
+    @Override
+    public boolean unlock(String lockKey) {
+        return unlock(Collections.singletonList(lockKey));
+    }
+
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        long start = System.nanoTime();
+        List<String> keys = distinct(lockKeys);
+        if (doLock(keys, val, lockTime)) {
+            stats.acquired(keys, start, 1);
+            return true;
+        }
+        stats.failed(keys, start, 1);
+        return false;
+    }
+
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        long start = System.nanoTime();
+        List<String> keys = distinct(lockKeys);
+        int attempts = 1;
+        while (!doLock(keys, val, lockTime)) {
+            Thread.sleep(retryDelay());
+            attempts++;
+        }
+        stats.acquired(keys, start, attempts);
+    }
+
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        long start = System.nanoTime();
+        List<String> keys = distinct(lockKeys);
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(int attempts = 1; ; attempts++){
+            if (doLock(keys, val, lockTime)) {
+                stats.acquired(keys, start, attempts);
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                stats.failed(keys, start, attempts);
+                return false;
+            }
+            Thread.sleep(Math.min(retryDelay(), remaining));
+        }
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        boolean result = true;
+        //按持有者分组释放
+        Map<String, List<String>> keysByHolder = new HashMap<>();
+        for (String lockKey : distinct(lockKeys)) {
+            String val = holders.remove(lockKey);
+            if (val == null) {
+                result = false;
+                continue;
+            }
+            keysByHolder.computeIfAbsent(val, v -> new ArrayList<>()).add(lockKey);
+            stats.released(lockKey);
+        }
+        for (Map.Entry<String, List<String>> entry : keysByHolder.entrySet()) {
+            int released = countSuccess(release(entry.getValue(), entry.getKey()), count -> count > 0);
+            result &= released >= quorum;
+        }
+        return result;
+    }
+
+    private boolean doLock(List<String> lockKeys, String val, int lockTime) {
+        if (lockTime <= 0) {
+            throw new IllegalArgumentException("RedLock不支持自动续期, lockTime必须大于0");
+        }
+        long lockTimeMillis = lockTime * 1000L;
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<Long>> futures = new ArrayList<>(jedisPools.size());
+        for (JedisPool jedisPool : jedisPools) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    return (Long) jedis.eval(LOCK_SCRIPT, lockKeys, Arrays.asList(val, String.valueOf(lockTimeMillis)));
+                }
+            }, executorService));
+        }
+        int acquired = countSuccess(futures, result -> result == 1L);
+        long drift = (long) (lockTimeMillis * CLOCK_DRIFT_FACTOR) + 2;
+        long validity = lockTimeMillis - (System.currentTimeMillis() - start) - drift;
+        if (acquired >= quorum && validity > 0) {
+            for (String lockKey : lockKeys) {
+                holders.put(lockKey, val);
+            }
+            return true;
+        }
+        //未获得多数节点或已超出有效期, 释放所有节点上可能已加上的锁
+        release(lockKeys, val);
+        return false;
+    }
+
+    private List<CompletableFuture<Long>> release(List<String> lockKeys, String val) {
+        List<CompletableFuture<Long>> futures = new ArrayList<>(jedisPools.size());
+        for (JedisPool jedisPool : jedisPools) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (Jedis jedis = jedisPool.getResource()) {
+                    return (Long) jedis.eval(UNLOCK_SCRIPT, lockKeys, Collections.singletonList(val));
+                }
+            }, executorService));
+        }
+        return futures;
+    }
+
+    /**
+     * 统计在节点超时时间内成功的节点数, 超时或异常的节点视为失败
+     */
+    private int countSuccess(List<CompletableFuture<Long>> futures, Function<Long, Boolean> success) {
+        long deadline = System.currentTimeMillis() + nodeTimeout;
+        int count = 0;
+        for (CompletableFuture<Long> future : futures) {
+            try {
+                long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+                Long result = future.get(remaining, TimeUnit.MILLISECONDS);
+                if (result != null && success.apply(result)) {
+                    count++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return count;
+            } catch (Exception e) {
+                stats.error();
+                logger.warn("RedLock节点操作失败: {}", e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    private static long retryDelay() {
+        return ThreadLocalRandom.current().nextLong(MIN_RETRY_DELAY, MAX_RETRY_DELAY);
+    }
+
+    private static List<String> distinct(Collection<String> lockKeys) {
+        return new ArrayList<>(new LinkedHashSet<>(lockKeys));
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+        for (JedisPool jedisPool : jedisPools) {
+            jedisPool.close();
+        }
+    }
+}
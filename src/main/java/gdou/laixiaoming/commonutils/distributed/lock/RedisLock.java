@@ -2,69 +2,453 @@ package gdou.laixiaoming.commonutils.distributed.lock;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.params.SetParams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis锁
+ * 阻塞获取时通过订阅锁释放事件唤醒, 轮询仅作为丢失消息时的兜底
+ * 通过{@link #RedisLock(JedisPool)}创建时自行持有订阅线程和续期线程, 不再使用时需调用{@link #close()}
  */
 @Component
-public class RedisLock implements DistributedLock{
+public class RedisLock implements DistributedLock, AutoCloseable{
 
-    private static final String LOCK_SUCCESS_FLAG = "OK";
     private static final Long UNLOCK_SUCCESS_FLAG = 1L;
-    private static final long SLEEP_TIME = 200;
+    private static final Long UNLOCK_HELD_FLAG = 2L;
 
-    private JedisPool jedisPool;
+    /**
+     * 加锁成功返回nil, 否则返回锁的剩余存活时间(ms)
+     */
+    private static final String LOCK_SCRIPT =
+            "if redis.call('set', KEYS[1], ARGV[1], 'NX', 'EX', ARGV[2]) then return nil end " +
+            "return redis.call('pttl', KEYS[1])";
+
+    /**
+     * 删除锁并发布释放事件
+     */
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('del', KEYS[1]) == 1 then " +
+            "redis.call('publish', ARGV[1], KEYS[1]) " +
+            "return 1 end " +
+            "return 0";
+
+    /**
+     * 批量加锁, 全部成功返回nil, 否则返回第一个被占用的锁的剩余存活时间(ms), 不做任何修改
+     */
+    private static final String MULTI_LOCK_SCRIPT =
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('exists', key) == 1 then return redis.call('pttl', key) end " +
+            "end " +
+            "for i, key in ipairs(KEYS) do " +
+            "redis.call('set', key, ARGV[1], 'EX', ARGV[2]) " +
+            "end " +
+            "return nil";
+
+    /**
+     * 批量删除锁并发布释放事件, 返回各锁的释放结果, 0: 未持有, 1: 已释放
+     */
+    private static final String MULTI_UNLOCK_SCRIPT =
+            "local result = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('del', key) == 1 then " +
+            "redis.call('publish', ARGV[1] .. key, key) " +
+            "result[i] = 1 else result[i] = 0 end " +
+            "end " +
+            "return result";
+
+    /**
+     * 可重入加锁, 锁为hash结构, field为持有者, value为持有次数
+     */
+    private static final String REENTRANT_LOCK_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 then " +
+            "redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "return nil end " +
+            "return redis.call('pttl', KEYS[1])";
+
+    /**
+     * 可重入释放, 只减少ARGV[2]的持有次数, 归零时删除锁并发布释放事件
+     * 返回0: 未持有, 1: 已释放, 2: 仍持有
+     */
+    private static final String REENTRANT_UNLOCK_SCRIPT =
+            "if redis.call('hexists', KEYS[1], ARGV[2]) == 0 then return 0 end " +
+            "if redis.call('hincrby', KEYS[1], ARGV[2], -1) > 0 then return 2 end " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('publish', ARGV[1], KEYS[1]) " +
+            "return 1";
+
+    private static final String REENTRANT_MULTI_LOCK_SCRIPT =
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('exists', key) == 1 and redis.call('hexists', key, ARGV[1]) == 0 then " +
+            "return redis.call('pttl', key) end " +
+            "end " +
+            "for i, key in ipairs(KEYS) do " +
+            "redis.call('hincrby', key, ARGV[1], 1) " +
+            "redis.call('expire', key, ARGV[2]) " +
+            "end " +
+            "return nil";
+
+    /**
+     * ARGV[i+1]为KEYS[i]的持有者, 返回各锁的释放结果, 0: 未持有, 1: 已释放, 2: 仍持有
+     */
+    private static final String REENTRANT_MULTI_UNLOCK_SCRIPT =
+            "local result = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "if redis.call('hexists', key, ARGV[i + 1]) == 0 then " +
+            "result[i] = 0 " +
+            "elseif redis.call('hincrby', key, ARGV[i + 1], -1) > 0 then " +
+            "result[i] = 2 " +
+            "else " +
+            "redis.call('del', key) " +
+            "redis.call('publish', ARGV[1] .. key, key) " +
+            "result[i] = 1 " +
+            "end " +
+            "end " +
+            "return result";
+
+    private RedisScriptExecutor scriptExecutor;
+
+    private RedisLockReleaseSubscriber releaseSubscriber;
+
+    private RedisLockWatchdog watchdog;
+
+    private LockStats stats;
+
+    /**
+     * 是否可重入
+     */
+    private boolean reentrant;
+
+    /**
+     * 可重入时本JVM获取的锁 lockKey -> 持有者, 供不带持有者的释放使用, 锁释放后移除
+     */
+    private final Map<String, String> owners = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅者和看门狗是否由本实例创建, 由本实例创建时在close时释放
+     */
+    private boolean ownsResources;
+
+    private String lockScript = LOCK_SCRIPT;
+    private String unlockScript = UNLOCK_SCRIPT;
+    private String multiLockScript = MULTI_LOCK_SCRIPT;
+    private String multiUnlockScript = MULTI_UNLOCK_SCRIPT;
 
-    @Autowired
     public RedisLock(JedisPool jedisPool) {
-        this.jedisPool = jedisPool;
+        this(new JedisScriptExecutor(jedisPool), new RedisLockReleaseSubscriber(jedisPool), new RedisLockWatchdog(jedisPool),
+                LockMetrics.NOOP);
+        this.ownsResources = true;
     }
 
-    private Jedis getRedisConnection() {
-        return jedisPool.getResource();
+    @Autowired
+    public RedisLock(RedisScriptExecutor scriptExecutor, RedisLockReleaseSubscriber releaseSubscriber,
+                     RedisLockWatchdog watchdog, LockMetrics lockMetrics) {
+        this(scriptExecutor, releaseSubscriber, watchdog, lockMetrics, false);
+    }
+
+    /**
+     * @param reentrant 是否可重入, 可重入时以val标识持有者, 持有次数保存在Redis中
+     */
+    RedisLock(RedisScriptExecutor scriptExecutor, RedisLockReleaseSubscriber releaseSubscriber,
+              RedisLockWatchdog watchdog, LockMetrics lockMetrics, boolean reentrant) {
+        this.scriptExecutor = scriptExecutor;
+        this.releaseSubscriber = releaseSubscriber;
+        this.watchdog = watchdog;
+        this.stats = lockMetrics.stats(reentrant ? "reentrant-redis" : "redis");
+        this.reentrant = reentrant;
+        if (reentrant) {
+            this.lockScript = REENTRANT_LOCK_SCRIPT;
+            this.unlockScript = REENTRANT_UNLOCK_SCRIPT;
+            this.multiLockScript = REENTRANT_MULTI_LOCK_SCRIPT;
+            this.multiUnlockScript = REENTRANT_MULTI_UNLOCK_SCRIPT;
+        }
+    }
+
+    /**
+     * 释放自行创建的订阅线程、续期线程及订阅连接; 注入的组件由容器管理, 不做处理
+     */
+    @Override
+    public void close() {
+        if (!ownsResources) {
+            return ;
+        }
+        ownsResources = false;
+        releaseSubscriber.destroy();
+        watchdog.destroy();
     }
 
     @Override
     public boolean tryLock(String lockKey, String val, int lockTime) {
-        String result = getRedisConnection().set(lockKey, val, SetParams.setParams().nx().ex(lockTime));
-        if(LOCK_SUCCESS_FLAG.equals(result)){
+        long start = System.nanoTime();
+        if (doLock(lockKey, val, lockTime) == null) {
+            afterLocked(lockKey, val, lockTime);
+            stats.acquired(lockKey, start, 1);
             return true;
         }
+        stats.failed(lockKey, start, 1);
         return false;
     }
 
     @Override
     public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
-        for(; ;){
-            String result = getRedisConnection().set(lockKey, val, SetParams.setParams().nx().ex(lockTime));
-            if(LOCK_SUCCESS_FLAG.equals(result)){
-                return ;
+        long start = System.nanoTime();
+        for(int attempts = 1; ; attempts++){
+            CountDownLatch latch = releaseSubscriber.register(lockKey);
+            try {
+                Long ttl = doLock(lockKey, val, lockTime);
+                if (ttl == null) {
+                    afterLocked(lockKey, val, lockTime);
+                    stats.acquired(lockKey, start, attempts);
+                    return ;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(lockKey, latch);
             }
-            Thread.sleep(SLEEP_TIME);
         }
     }
 
     @Override
     public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
-        long bolckTime = timeout * 1000;
-        while (bolckTime >= 0) {
-            String result = getRedisConnection().set(lockKey, val, SetParams.setParams().nx().ex(lockTime));
-            if(LOCK_SUCCESS_FLAG.equals(result)){
-                return true;
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(int attempts = 1; ; attempts++){
+            CountDownLatch latch = releaseSubscriber.register(lockKey);
+            try {
+                Long ttl = doLock(lockKey, val, lockTime);
+                if (ttl == null) {
+                    afterLocked(lockKey, val, lockTime);
+                    stats.acquired(lockKey, start, attempts);
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    stats.failed(lockKey, start, attempts);
+                    return false;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, remaining), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(lockKey, latch);
             }
-            Thread.sleep(SLEEP_TIME);
-            bolckTime -= SLEEP_TIME;
         }
-        return false;
     }
 
+    /**
+     * 可重入时释放本JVM中持有者的一次持有
+     */
     @Override
     public boolean unlock(String lockKey) {
-        Long result = getRedisConnection().del(lockKey);
-        return UNLOCK_SUCCESS_FLAG.equals(result);
+        return unlock(lockKey, reentrant ? owners.get(lockKey) : null);
+    }
+
+    /**
+     * 释放指定持有者的锁, 可重入时只有持有者能减少持有次数; 不可重入时忽略val
+     */
+    boolean unlock(String lockKey, String val) {
+        if (reentrant && val == null) {
+            return false;
+        }
+        List<String> args = reentrant
+                ? Arrays.asList(RedisLockReleaseSubscriber.channelOf(lockKey), val)
+                : Collections.singletonList(RedisLockReleaseSubscriber.channelOf(lockKey));
+        Long result;
+        try {
+            result = scriptExecutor.eval(unlockScript, RedisScriptExecutor.ReturnType.INTEGER,
+                    Collections.singletonList(lockKey), args);
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+        return afterUnlock(lockKey, val, result);
+    }
+
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        long start = System.nanoTime();
+        List<String> keys = distinct(lockKeys);
+        if (doLock(keys, val, lockTime) == null) {
+            afterLocked(keys, val, lockTime);
+            stats.acquired(keys, start, 1);
+            return true;
+        }
+        stats.failed(keys, start, 1);
+        return false;
+    }
+
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        List<String> keys = distinct(lockKeys);
+        long start = System.nanoTime();
+        for(int attempts = 1; ; attempts++){
+            CountDownLatch latch = releaseSubscriber.register(keys);
+            try {
+                Long ttl = doLock(keys, val, lockTime);
+                if (ttl == null) {
+                    afterLocked(keys, val, lockTime);
+                    stats.acquired(keys, start, attempts);
+                    return ;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(keys, latch);
+            }
+        }
+    }
+
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        List<String> keys = distinct(lockKeys);
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(int attempts = 1; ; attempts++){
+            CountDownLatch latch = releaseSubscriber.register(keys);
+            try {
+                Long ttl = doLock(keys, val, lockTime);
+                if (ttl == null) {
+                    afterLocked(keys, val, lockTime);
+                    stats.acquired(keys, start, attempts);
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    stats.failed(keys, start, attempts);
+                    return false;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, remaining), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(keys, latch);
+            }
+        }
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        return unlock(lockKeys, null);
+    }
+
+    /**
+     * 批量释放指定持有者的锁, val为null时各锁使用本JVM中的持有者
+     */
+    boolean unlock(Collection<String> lockKeys, String val) {
+        List<String> keys = distinct(lockKeys);
+        List<String> args = new ArrayList<>(keys.size() + 1);
+        args.add(RedisLockReleaseSubscriber.CHANNEL_PREFIX);
+        if (reentrant) {
+            for (String lockKey : keys) {
+                String owner = val != null ? val : owners.get(lockKey);
+                //空字符串不是任何锁的持有者
+                args.add(owner != null ? owner : "");
+            }
+        }
+        List<Object> result;
+        try {
+            result = scriptExecutor.eval(multiUnlockScript, RedisScriptExecutor.ReturnType.MULTI, keys, args);
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+        boolean unlocked = true;
+        for (int i = 0; i < keys.size(); i++) {
+            String owner = reentrant ? args.get(i + 1) : null;
+            unlocked &= afterUnlock(keys.get(i), owner, (Long) result.get(i));
+        }
+        return unlocked;
+    }
+
+    LockStats getStats() {
+        return stats;
+    }
+
+    /**
+     * 单次尝试加锁, 供异步加锁使用
+     * @return 加锁成功返回null, 否则返回锁的剩余存活时间(ms)
+     */
+    Long tryAcquire(String lockKey, String val, int lockTime) {
+        Long ttl = doLock(lockKey, val, lockTime);
+        if (ttl == null) {
+            afterLocked(lockKey, val, lockTime);
+        }
+        return ttl;
+    }
+
+    /**
+     * 尝试加锁, 连接在本次尝试结束后立即归还, 等待期间不占用连接
+     * @return 加锁成功返回null, 否则返回锁的剩余存活时间(ms)
+     */
+    private Long doLock(String lockKey, String val, int lockTime) {
+        try {
+            return scriptExecutor.eval(lockScript, RedisScriptExecutor.ReturnType.INTEGER,
+                    Collections.singletonList(lockKey),
+                    Arrays.asList(val, String.valueOf(leaseTime(lockTime))));
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+    }
+
+    /**
+     * 尝试批量加锁, 一次往返完成
+     * @return 加锁成功返回null, 否则返回被占用的锁的剩余存活时间(ms)
+     */
+    private Long doLock(List<String> lockKeys, String val, int lockTime) {
+        try {
+            return scriptExecutor.eval(multiLockScript, RedisScriptExecutor.ReturnType.INTEGER, lockKeys,
+                    Arrays.asList(val, String.valueOf(leaseTime(lockTime))));
+        } catch (RuntimeException e) {
+            stats.error();
+            throw e;
+        }
+    }
+
+    private static List<String> distinct(Collection<String> lockKeys) {
+        return new ArrayList<>(new LinkedHashSet<>(lockKeys));
+    }
+
+    private int leaseTime(int lockTime) {
+        return lockTime == WATCHDOG_LOCK_TIME ? watchdog.getLeaseTime() : lockTime;
+    }
+
+    private void afterLocked(String lockKey, String val, int lockTime) {
+        if (reentrant) {
+            owners.put(lockKey, val);
+        }
+        if (lockTime == WATCHDOG_LOCK_TIME) {
+            watchdog.watch(lockKey, val);
+        }
+    }
+
+    private void afterLocked(List<String> lockKeys, String val, int lockTime) {
+        for (String lockKey : lockKeys) {
+            afterLocked(lockKey, val, lockTime);
+        }
+    }
+
+    /**
+     * 锁已释放或本JVM的持有者已不再持有时停止续期; 其他持有者释放失败不影响当前持有者
+     * @param result 0: 未持有, 1: 已释放, 2: 仍持有
+     */
+    private boolean afterUnlock(String lockKey, String val, Long result) {
+        if (UNLOCK_HELD_FLAG.equals(result)) {
+            //重入次数未归零, 继续续期
+            return true;
+        }
+        boolean owned = !reentrant || owners.remove(lockKey, val);
+        boolean unlocked = UNLOCK_SUCCESS_FLAG.equals(result);
+        if (owned || unlocked) {
+            watchdog.unwatch(lockKey);
+            stats.released(lockKey);
+        }
+        return unlocked;
     }
 
 }
@@ -0,0 +1,240 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Redis锁释放事件订阅
+ * 所有等待者共用一个订阅连接, 锁释放时按lockKey唤醒对应的等待者
+ */
+@Component
+public class RedisLockReleaseSubscriber implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLockReleaseSubscriber.class);
+
+    static final String CHANNEL_PREFIX = "redis-lock:release:";
+    private static final long RECONNECT_INTERVAL = 1000;
+    private static final long SLEEP_TIME = 200;
+    /**
+     * 订阅可用时的兜底轮询间隔
+     */
+    private static final long FALLBACK_SLEEP_TIME = 1000;
+
+    private JedisPool jedisPool;
+
+    /**
+     * lockKey -> 等待者, 锁释放时在订阅线程上回调, 回调中不应执行耗时操作
+     */
+    private final Map<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+
+    private final JedisPubSub pubSub = new ReleaseListener();
+
+    private volatile boolean running;
+    private volatile boolean subscribed;
+    private Thread subscribeThread;
+
+    @Autowired
+    public RedisLockReleaseSubscriber(JedisPool jedisPool) {
+        this.jedisPool = jedisPool;
+    }
+
+    static String channelOf(String lockKey) {
+        return CHANNEL_PREFIX + lockKey;
+    }
+
+    /**
+     * 订阅连接是否可用, 不可用时等待者只能依靠轮询
+     * @return
+     */
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * 计算本轮等待时间: 不超过锁的剩余存活时间和剩余超时时间, 订阅不可用时退化为原有轮询间隔
+     * @param ttl 占用者的剩余存活时间(ms), 负数表示无过期时间(-1)或已释放(-2)
+     * @param remaining 剩余超时时间(ms)
+     * @return
+     */
+    public long waitTime(long ttl, long remaining) {
+        long waitTime = isSubscribed() ? FALLBACK_SLEEP_TIME : SLEEP_TIME;
+        if (ttl >= 0) {
+            //锁即将过期, 过期不会发布释放事件
+            waitTime = Math.min(waitTime, ttl);
+        } else if (ttl == -2) {
+            //锁恰好已释放, 立即重试
+            waitTime = 0;
+        }
+        return Math.min(waitTime, remaining);
+    }
+
+    /**
+     * 登记等待者, 需在尝试加锁之前登记, 避免错过两者之间发生的释放事件
+     * @param lockKey
+     * @return
+     */
+    public CountDownLatch register(String lockKey) {
+        return register(Collections.singleton(lockKey));
+    }
+
+    /**
+     * 登记等待一组锁的等待者, 其中任意一个锁释放都会唤醒
+     * @param lockKeys
+     * @return
+     */
+    public CountDownLatch register(Collection<String> lockKeys) {
+        ReleaseLatch latch = new ReleaseLatch();
+        register(lockKeys, latch);
+        return latch;
+    }
+
+    /**
+     * 登记释放回调, 供异步等待使用
+     * @param lockKeys
+     * @param listener
+     */
+    public void register(Collection<String> lockKeys, Runnable listener) {
+        ensureStarted();
+        for (String lockKey : lockKeys) {
+            waiters.compute(lockKey, (key, listeners) -> {
+                if (listeners == null) {
+                    listeners = ConcurrentHashMap.newKeySet();
+                }
+                listeners.add(listener);
+                return listeners;
+            });
+        }
+    }
+
+    public void unregister(String lockKey, CountDownLatch latch) {
+        unregister(Collections.singleton(lockKey), (Runnable) latch);
+    }
+
+    public void unregister(Collection<String> lockKeys, CountDownLatch latch) {
+        unregister(lockKeys, (Runnable) latch);
+    }
+
+    public void unregister(Collection<String> lockKeys, Runnable listener) {
+        for (String lockKey : lockKeys) {
+            waiters.computeIfPresent(lockKey, (key, listeners) -> {
+                listeners.remove(listener);
+                return listeners.isEmpty() ? null : listeners;
+            });
+        }
+    }
+
+    private void wakeUp(String lockKey) {
+        Set<Runnable> listeners = waiters.get(lockKey);
+        if (listeners == null) {
+            return ;
+        }
+        for (Runnable listener : listeners) {
+            notify(listener);
+        }
+    }
+
+    /**
+     * 连接中断期间的消息可能丢失, 重连后唤醒全部等待者重新竞争
+     */
+    private void wakeUpAll() {
+        for (Set<Runnable> listeners : waiters.values()) {
+            for (Runnable listener : listeners) {
+                notify(listener);
+            }
+        }
+    }
+
+    private void notify(Runnable listener) {
+        try {
+            listener.run();
+        } catch (Exception e) {
+            logger.warn("Redis锁释放回调异常", e);
+        }
+    }
+
+    private synchronized void ensureStarted() {
+        if (running) {
+            return ;
+        }
+        running = true;
+        subscribeThread = new Thread(this::subscribeLoop, "redis-lock-release-subscriber");
+        subscribeThread.setDaemon(true);
+        subscribeThread.start();
+    }
+
+    private void subscribeLoop() {
+        while (running) {
+            try (Jedis jedis = jedisPool.getResource()) {
+                //阻塞直到取消订阅或连接异常
+                jedis.psubscribe(pubSub, CHANNEL_PREFIX + "*");
+            } catch (Exception e) {
+                logger.warn("Redis锁释放事件订阅中断: {}", e.getMessage());
+            }
+            subscribed = false;
+            if (!running) {
+                return ;
+            }
+            try {
+                Thread.sleep(RECONNECT_INTERVAL);
+            } catch (InterruptedException e) {
+                return ;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (!running) {
+            return ;
+        }
+        running = false;
+        try {
+            if (pubSub.isSubscribed()) {
+                pubSub.punsubscribe();
+            }
+        } catch (Exception e) {
+            logger.warn("取消Redis锁释放事件订阅失败", e);
+        }
+        subscribeThread.interrupt();
+        wakeUpAll();
+    }
+
+    private static class ReleaseLatch extends CountDownLatch implements Runnable {
+
+        ReleaseLatch() {
+            super(1);
+        }
+
+        @Override
+        public void run() {
+            countDown();
+        }
+    }
+
+    private class ReleaseListener extends JedisPubSub {
+
+        @Override
+        public void onPMessage(String pattern, String channel, String message) {
+            wakeUp(channel.substring(CHANNEL_PREFIX.length()));
+        }
+
+        @Override
+        public void onPSubscribe(String pattern, int subscribedChannels) {
+            subscribed = true;
+            wakeUpAll();
+        }
+    }
+}
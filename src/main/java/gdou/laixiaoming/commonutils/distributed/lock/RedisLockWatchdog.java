@@ -0,0 +1,135 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis锁看门狗
+ * 本JVM持有的续期模式锁由同一个调度线程批量续期, 持有者存活期间锁不会过期
+ */
+@Component
+public class RedisLockWatchdog implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLockWatchdog.class);
+
+    /**
+     * 默认租期, 单位S
+     */
+    public static final int DEFAULT_LEASE_TIME = 30;
+
+    /**
+     * 单次续期脚本处理的锁数量上限
+     */
+    private static final int RENEW_BATCH_SIZE = 100;
+
+    /**
+     * 校验持有者后续期, 返回已不再持有的锁, 兼容普通锁(string)和可重入锁(hash)
+     * ARGV[1]为租期, ARGV[i+1]为KEYS[i]的持有者
+     */
+    private static final String RENEW_SCRIPT =
+            "local lost = {} " +
+            "for i, key in ipairs(KEYS) do " +
+            "local t = redis.call('type', key).ok " +
+            "if (t == 'string' and redis.call('get', key) == ARGV[i + 1]) " +
+            "or (t == 'hash' and redis.call('hexists', key, ARGV[i + 1]) == 1) then " +
+            "redis.call('expire', key, ARGV[1]) " +
+            "else table.insert(lost, key) end " +
+            "end " +
+            "return lost";
+
+    private JedisPool jedisPool;
+
+    private int leaseTime;
+
+    /**
+     * lockKey -> 持有者
+     */
+    private final Map<String, String> leases = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduledExecutorService;
+
+    @Autowired
+    public RedisLockWatchdog(JedisPool jedisPool) {
+        this(jedisPool, DEFAULT_LEASE_TIME);
+    }
+
+    public RedisLockWatchdog(JedisPool jedisPool, int leaseTime) {
+        this.jedisPool = jedisPool;
+        this.leaseTime = leaseTime;
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(
+                new BasicThreadFactory.Builder().namingPattern("redis-lock-watchdog").daemon(true).build());
+        //每三分之一租期续期一次
+        long renewPeriod = Math.max(leaseTime * 1000L / 3, 1);
+        scheduledExecutorService.scheduleAtFixedRate(this::renew, renewPeriod, renewPeriod, TimeUnit.MILLISECONDS);
+    }
+
+    public int getLeaseTime() {
+        return leaseTime;
+    }
+
+    public void watch(String lockKey, String val) {
+        leases.put(lockKey, val);
+    }
+
+    public void unwatch(String lockKey) {
+        leases.remove(lockKey);
+    }
+
+    private void renew() {
+        if (leases.isEmpty()) {
+            return ;
+        }
+        List<String> keys = new ArrayList<>(RENEW_BATCH_SIZE);
+        List<String> args = new ArrayList<>(RENEW_BATCH_SIZE + 1);
+        args.add(String.valueOf(leaseTime));
+        for (Map.Entry<String, String> lease : leases.entrySet()) {
+            keys.add(lease.getKey());
+            args.add(lease.getValue());
+            if (keys.size() == RENEW_BATCH_SIZE) {
+                renew(keys, args);
+                keys.clear();
+                args.subList(1, args.size()).clear();
+            }
+        }
+        if (!keys.isEmpty()) {
+            renew(keys, args);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void renew(List<String> keys, List<String> args) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            List<String> lost = (List<String>) jedis.eval(RENEW_SCRIPT, keys, args);
+            for (String lockKey : lost) {
+                //只移除续期时的持有者, 期间被重新获取的锁不受影响
+                int index = keys.indexOf(lockKey);
+                if (leases.remove(lockKey, args.get(index + 1))) {
+                    logger.warn("锁{}已丢失, 停止续期", lockKey);
+                }
+            }
+        } catch (Exception e) {
+            //保留租约, 下一周期重试
+            logger.warn("锁续期失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduledExecutorService.shutdownNow();
+        leases.clear();
+    }
+}
@@ -0,0 +1,188 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis令牌桶限流
+ * 令牌在服务端按时间差惰性补充, 每次取令牌只需一次脚本调用;
+ * 本地按批预取少量令牌, 批量按上一窗口的本地请求数确定, 请求稀疏时每次只取一个;
+ * 预取的令牌只在短时间内有效, 避免本节点囤积令牌造成突发, 过期未用的令牌在下次取令牌时归还令牌桶
+ */
+@Component
+public class RedisRateLimiter {
+
+    /**
+     * 预取令牌的有效期(ms)
+     */
+    private static final long PREFETCH_WINDOW = 50;
+
+    /**
+     * 单次最多预取的令牌数
+     */
+    private static final int MAX_PREFETCH = 16;
+
+    /**
+     * KEYS[1]: 令牌桶
+     * ARGV[1]: 每秒生成的令牌数, ARGV[2]: 桶容量, ARGV[3]: 最多获取的令牌数, ARGV[4]: 归还的令牌数
+     * 返回{获取到的令牌数, 未获取到时需等待的时间(ms)}
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "redis.replicate_commands() " +
+            "local time = redis.call('time') " +
+            "local now = tonumber(time[1]) * 1000 + tonumber(time[2]) / 1000 " +
+            "local rate = tonumber(ARGV[1]) " +
+            "local capacity = tonumber(ARGV[2]) " +
+            "local bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts') " +
+            "local tokens = tonumber(bucket[1]) or capacity " +
+            "local ts = tonumber(bucket[2]) or now " +
+            "tokens = math.min(capacity, tokens + math.max(now - ts, 0) * rate / 1000 + tonumber(ARGV[4])) " +
+            "local granted = math.min(math.floor(tokens), tonumber(ARGV[3])) " +
+            "tokens = tokens - granted " +
+            "redis.call('hmset', KEYS[1], 'tokens', tokens, 'ts', now) " +
+            //桶装满后的状态与不存在时相同, 无需保留
+            "redis.call('pexpire', KEYS[1], math.ceil((capacity - tokens) * 1000 / rate) + 1000) " +
+            "if granted > 0 then return {granted, 0} end " +
+            "return {0, math.ceil((1 - tokens) * 1000 / rate)}";
+
+    private RedisScriptExecutor scriptExecutor;
+
+    /**
+     * key -> 本地预取的令牌
+     */
+    private final Map<String, PrefetchedTokens> prefetched = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RedisRateLimiter(RedisScriptExecutor scriptExecutor) {
+        this.scriptExecutor = scriptExecutor;
+    }
+
+    /**
+     * 非阻塞获取一个令牌
+     * @param key 令牌桶
+     * @param rate 每秒生成的令牌数
+     * @param capacity 桶容量, 即允许的突发量
+     * @return
+     */
+    public boolean tryAcquire(String key, double rate, int capacity) {
+        return doAcquire(key, rate, capacity) == 0;
+    }
+
+    /**
+     * 阻塞获取一个令牌，接受超时时间
+     * @param timeout 获取超时时间，单位S
+     */
+    public boolean acquire(String key, double rate, int capacity, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(; ;){
+            long waitTime = doAcquire(key, rate, capacity);
+            if (waitTime == 0) {
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(waitTime, remaining));
+        }
+    }
+
+    /**
+     * @return 获取成功返回0, 否则返回需等待的时间(ms)
+     */
+    private long doAcquire(String key, double rate, int capacity) {
+        PrefetchedTokens tokens = prefetched.computeIfAbsent(key, k -> new PrefetchedTokens());
+        if (tokens.take()) {
+            return 0;
+        }
+        int limit = (int) Math.max(1, Math.min(Math.min(MAX_PREFETCH, capacity), rate * PREFETCH_WINDOW / 1000));
+        int batch = tokens.batch(limit);
+        int unused = tokens.drainUnused();
+        List<Long> result = scriptExecutor.eval(ACQUIRE_SCRIPT, RedisScriptExecutor.ReturnType.MULTI,
+                Collections.singletonList(key),
+                Arrays.asList(String.valueOf(rate), String.valueOf(capacity), String.valueOf(batch),
+                        String.valueOf(unused)));
+        long granted = result.get(0);
+        if (granted > 0) {
+            tokens.put((int) granted - 1);
+            return 0;
+        }
+        return Math.max(result.get(1), 1);
+    }
+
+    private static class PrefetchedTokens {
+
+        private int count;
+
+        private long expireAt;
+
+        /**
+         * 过期未用的令牌数, 下次取令牌时归还
+         */
+        private int unused;
+
+        /**
+         * 当前窗口及上一窗口的本地请求数
+         */
+        private int demand;
+        private int lastDemand;
+        private long windowStart;
+
+        synchronized boolean take() {
+            long now = System.currentTimeMillis();
+            roll(now);
+            demand++;
+            expire(now);
+            if (count > 0) {
+                count--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 按上一窗口的本地请求数预取, 本窗口请求更多时以本窗口为准
+         */
+        synchronized int batch(int limit) {
+            return Math.max(1, Math.min(limit, Math.max(lastDemand, demand)));
+        }
+
+        synchronized int drainUnused() {
+            int unused = this.unused;
+            this.unused = 0;
+            return unused;
+        }
+
+        synchronized void put(int count) {
+            if (count > 0) {
+                long now = System.currentTimeMillis();
+                expire(now);
+                this.count += count;
+                this.expireAt = now + PREFETCH_WINDOW;
+            }
+        }
+
+        private void expire(long now) {
+            if (count > 0 && now >= expireAt) {
+                unused += count;
+                count = 0;
+            }
+        }
+
+        private void roll(long now) {
+            long elapsed = now - windowStart;
+            if (elapsed >= PREFETCH_WINDOW) {
+                //中间空闲超过一个窗口时上一窗口没有请求
+                lastDemand = elapsed < PREFETCH_WINDOW * 2 ? demand : 0;
+                demand = 0;
+                windowStart = now;
+            }
+        }
+    }
+}
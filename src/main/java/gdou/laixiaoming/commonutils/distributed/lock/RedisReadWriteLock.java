@@ -0,0 +1,271 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis读写锁
+ * 读锁可被多个持有者同时持有, 写锁独占; 有写者等待时不再授予新的读锁, 避免写者饥饿
+ * 锁为hash结构, __mode记录当前模式, 其余field为持有者及其持有次数, 同一持有者可重入
+ * 读锁可能有多个持有者, 不支持看门狗续期, lockTime需为正数
+ */
+@Component
+public class RedisReadWriteLock {
+
+    private static final Long UNLOCK_SUCCESS_FLAG = 1L;
+    private static final Long UNLOCK_HELD_FLAG = 2L;
+
+    private static final String READ_MODE = "read";
+    private static final String WRITE_MODE = "write";
+    private static final String WRITE_INTENT_SUFFIX = ":write-intent";
+
+    /**
+     * 写意向存活时间, 等待中的写者每次重试时刷新
+     */
+    private static final long WRITE_INTENT_TIME = 5000;
+
+    /**
+     * KEYS[1]: 锁, KEYS[2]: 写意向
+     * ARGV[1]: 持有者, ARGV[2]: 锁占用时间(s)
+     * 成功返回nil, 否则返回需等待的时间(ms)
+     */
+    private static final String READ_LOCK_SCRIPT =
+            "local mode = redis.call('hget', KEYS[1], '__mode') " +
+            "if mode == 'write' then return redis.call('pttl', KEYS[1]) end " +
+            "if redis.call('exists', KEYS[2]) == 1 " +
+            "and (mode == false or redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+            "return redis.call('pttl', KEYS[2]) end " +
+            "redis.call('hset', KEYS[1], '__mode', 'read') " +
+            "redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+            "if redis.call('ttl', KEYS[1]) < tonumber(ARGV[2]) then redis.call('expire', KEYS[1], ARGV[2]) end " +
+            "return nil";
+
+    /**
+     * KEYS[1]: 锁, KEYS[2]: 写意向
+     * ARGV[1]: 持有者, ARGV[2]: 锁占用时间(s), ARGV[3]: 写意向存活时间(ms), 为0时不登记写意向
+     * 成功返回nil, 否则返回锁的剩余存活时间(ms)
+     */
+    private static final String WRITE_LOCK_SCRIPT =
+            "local mode = redis.call('hget', KEYS[1], '__mode') " +
+            "if mode == false or (mode == 'write' and redis.call('hexists', KEYS[1], ARGV[1]) == 1) then " +
+            "redis.call('hset', KEYS[1], '__mode', 'write') " +
+            "redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+            "redis.call('expire', KEYS[1], ARGV[2]) " +
+            "if redis.call('get', KEYS[2]) == ARGV[1] then redis.call('del', KEYS[2]) end " +
+            "return nil end " +
+            "if tonumber(ARGV[3]) > 0 then " +
+            "local intent = redis.call('get', KEYS[2]) " +
+            "if intent == false or intent == ARGV[1] then redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[3]) end " +
+            "end " +
+            "return redis.call('pttl', KEYS[1])";
+
+    /**
+     * KEYS[1]: 锁
+     * ARGV[1]: 持有者, ARGV[2]: 释放事件频道, ARGV[3]: 模式
+     * 返回0: 未持有, 1: 已释放, 2: 仍持有
+     */
+    private static final String UNLOCK_SCRIPT =
+            "if redis.call('hget', KEYS[1], '__mode') ~= ARGV[3] " +
+            "or redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "if redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0 then return 2 end " +
+            "redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "if redis.call('hlen', KEYS[1]) > 1 then return 1 end " +
+            "redis.call('del', KEYS[1]) " +
+            "redis.call('publish', ARGV[2], KEYS[1]) " +
+            "return 1";
+
+    /**
+     * 放弃等待时撤销自己登记的写意向
+     */
+    private static final String CANCEL_INTENT_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) end " +
+            "return 0";
+
+    private RedisScriptExecutor scriptExecutor;
+
+    private RedisLockReleaseSubscriber releaseSubscriber;
+
+    @Autowired
+    public RedisReadWriteLock(RedisScriptExecutor scriptExecutor, RedisLockReleaseSubscriber releaseSubscriber) {
+        this.scriptExecutor = scriptExecutor;
+        this.releaseSubscriber = releaseSubscriber;
+    }
+
+    /**
+     * 非阻塞获取读锁
+     * @param lockKey
+     * @param val 持有者
+     * @param lockTime 锁占用时间，单位S
+     * @return
+     */
+    public boolean tryReadLock(String lockKey, String val, int lockTime) {
+        return doReadLock(lockKey, val, lockTime) == null;
+    }
+
+    /**
+     * 阻塞获取读锁，直到获取成功
+     */
+    public void readLock(String lockKey, String val, int lockTime) throws InterruptedException {
+        for(; ;){
+            CountDownLatch latch = releaseSubscriber.register(lockKey);
+            try {
+                Long ttl = doReadLock(lockKey, val, lockTime);
+                if (ttl == null) {
+                    return ;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, Long.MAX_VALUE), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(lockKey, latch);
+            }
+        }
+    }
+
+    /**
+     * 阻塞获取读锁，接受超时时间
+     * @param timeout 锁获取超时时间，单位S
+     */
+    public boolean readLock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(; ;){
+            CountDownLatch latch = releaseSubscriber.register(lockKey);
+            try {
+                Long ttl = doReadLock(lockKey, val, lockTime);
+                if (ttl == null) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, remaining), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(lockKey, latch);
+            }
+        }
+    }
+
+    /**
+     * 读锁释放, 最后一个读者释放时唤醒等待者
+     */
+    public boolean unlockRead(String lockKey, String val) {
+        return doUnlock(lockKey, val, READ_MODE);
+    }
+
+    /**
+     * 非阻塞获取写锁, 获取失败时不登记写意向
+     */
+    public boolean tryWriteLock(String lockKey, String val, int lockTime) {
+        return doWriteLock(lockKey, val, lockTime, 0) == null;
+    }
+
+    /**
+     * 阻塞获取写锁，直到获取成功
+     */
+    public void writeLock(String lockKey, String val, int lockTime) throws InterruptedException {
+        boolean locked = false;
+        try {
+            for(; ;){
+                CountDownLatch latch = releaseSubscriber.register(lockKey);
+                try {
+                    Long ttl = doWriteLock(lockKey, val, lockTime, WRITE_INTENT_TIME);
+                    if (ttl == null) {
+                        locked = true;
+                        return ;
+                    }
+                    latch.await(releaseSubscriber.waitTime(ttl, WRITE_INTENT_TIME / 2), TimeUnit.MILLISECONDS);
+                } finally {
+                    releaseSubscriber.unregister(lockKey, latch);
+                }
+            }
+        } finally {
+            if (!locked) {
+                cancelWriteIntent(lockKey, val);
+            }
+        }
+    }
+
+    /**
+     * 阻塞获取写锁，接受超时时间
+     * @param timeout 锁获取超时时间，单位S
+     */
+    public boolean writeLock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        boolean locked = false;
+        try {
+            for(; ;){
+                CountDownLatch latch = releaseSubscriber.register(lockKey);
+                try {
+                    Long ttl = doWriteLock(lockKey, val, lockTime, WRITE_INTENT_TIME);
+                    if (ttl == null) {
+                        locked = true;
+                        return true;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    //写意向到期前需重试刷新
+                    long waitTime = releaseSubscriber.waitTime(ttl, Math.min(remaining, WRITE_INTENT_TIME / 2));
+                    latch.await(waitTime, TimeUnit.MILLISECONDS);
+                } finally {
+                    releaseSubscriber.unregister(lockKey, latch);
+                }
+            }
+        } finally {
+            if (!locked) {
+                cancelWriteIntent(lockKey, val);
+            }
+        }
+    }
+
+    /**
+     * 写锁释放
+     */
+    public boolean unlockWrite(String lockKey, String val) {
+        return doUnlock(lockKey, val, WRITE_MODE);
+    }
+
+    private Long doReadLock(String lockKey, String val, int lockTime) {
+        checkLockTime(lockTime);
+        return scriptExecutor.eval(READ_LOCK_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                keysOf(lockKey),
+                Arrays.asList(val, String.valueOf(lockTime)));
+    }
+
+    private Long doWriteLock(String lockKey, String val, int lockTime, long intentTime) {
+        checkLockTime(lockTime);
+        return scriptExecutor.eval(WRITE_LOCK_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                keysOf(lockKey),
+                Arrays.asList(val, String.valueOf(lockTime), String.valueOf(intentTime)));
+    }
+
+    private boolean doUnlock(String lockKey, String val, String mode) {
+        Long result = scriptExecutor.eval(UNLOCK_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                Arrays.asList(lockKey),
+                Arrays.asList(val, RedisLockReleaseSubscriber.channelOf(lockKey), mode));
+        return UNLOCK_SUCCESS_FLAG.equals(result) || UNLOCK_HELD_FLAG.equals(result);
+    }
+
+    private void cancelWriteIntent(String lockKey, String val) {
+        scriptExecutor.eval(CANCEL_INTENT_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                Arrays.asList(lockKey + WRITE_INTENT_SUFFIX), Arrays.asList(val));
+    }
+
+    /**
+     * lockTime为{@link DistributedLock#WATCHDOG_LOCK_TIME}时读锁永不过期、写锁获取后立即被删除, 因此直接拒绝
+     */
+    private static void checkLockTime(int lockTime) {
+        if (lockTime <= 0) {
+            throw new IllegalArgumentException("lockTime必须大于0: " + lockTime);
+        }
+    }
+
+    private static List<String> keysOf(String lockKey) {
+        return Arrays.asList(lockKey, lockKey + WRITE_INTENT_SUFFIX);
+    }
+}
@@ -0,0 +1,34 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import java.util.List;
+
+/**
+ * Redis锁的客户端后端, 锁的全部命令均以Lua脚本执行
+ * 由配置项redis.lock.client选择实现: jedis(默认, 连接池)或lettuce(基于Netty的多路复用连接)
+ */
+public interface RedisScriptExecutor {
+
+    /**
+     * 脚本返回值类型
+     */
+    enum ReturnType {
+        /**
+         * 整数或nil, 返回Long或null
+         */
+        INTEGER,
+        /**
+         * 数组, 返回List<Object>, 元素为Long或String
+         */
+        MULTI
+    }
+
+    /**
+     * 执行脚本
+     * @param script
+     * @param returnType
+     * @param keys
+     * @param args
+     * @return
+     */
+    <T> T eval(String script, ReturnType returnType, List<String> keys, List<String> args);
+}
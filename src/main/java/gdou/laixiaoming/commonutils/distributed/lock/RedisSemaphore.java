@@ -0,0 +1,112 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis信号量
+ * 许可以zset保存, member为许可标识, score为租约到期时间; 持有者异常退出时许可在租约到期后自动回收
+ * 同一信号量最多同时发出permits个许可, 调用方可并发执行permits个任务, 而非像锁一样串行
+ */
+@Component
+public class RedisSemaphore {
+
+    private static final Long RELEASE_SUCCESS_FLAG = 1L;
+
+    /**
+     * KEYS[1]: 信号量
+     * ARGV[1]: 许可标识, ARGV[2]: 许可数, ARGV[3]: 租约时间(ms)
+     * 成功返回nil, 否则返回最早到期的租约的剩余时间(ms)
+     */
+    private static final String ACQUIRE_SCRIPT =
+            "redis.replicate_commands() " +
+            "local time = redis.call('time') " +
+            "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+            "if redis.call('zscore', KEYS[1], ARGV[1]) == false " +
+            "and redis.call('zcard', KEYS[1]) >= tonumber(ARGV[2]) then " +
+            "local first = redis.call('zrange', KEYS[1], 0, 0, 'withscores') " +
+            "return math.max(tonumber(first[2]) - now, 1) end " +
+            "redis.call('zadd', KEYS[1], now + tonumber(ARGV[3]), ARGV[1]) " +
+            "local last = redis.call('zrange', KEYS[1], -1, -1, 'withscores') " +
+            "redis.call('pexpireat', KEYS[1], last[2]) " +
+            "return nil";
+
+    /**
+     * KEYS[1]: 信号量
+     * ARGV[1]: 许可标识, ARGV[2]: 释放事件频道
+     */
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('zrem', KEYS[1], ARGV[1]) == 1 then " +
+            "redis.call('publish', ARGV[2], KEYS[1]) " +
+            "return 1 end " +
+            "return 0";
+
+    private RedisScriptExecutor scriptExecutor;
+
+    private RedisLockReleaseSubscriber releaseSubscriber;
+
+    @Autowired
+    public RedisSemaphore(RedisScriptExecutor scriptExecutor, RedisLockReleaseSubscriber releaseSubscriber) {
+        this.scriptExecutor = scriptExecutor;
+        this.releaseSubscriber = releaseSubscriber;
+    }
+
+    /**
+     * 非阻塞获取许可, 同一许可标识重复获取时续租
+     * @param key 信号量
+     * @param permitId 许可标识, 每个持有者唯一
+     * @param permits 许可总数
+     * @param leaseTime 租约时间，单位S
+     * @return
+     */
+    public boolean tryAcquire(String key, String permitId, int permits, int leaseTime) {
+        return doAcquire(key, permitId, permits, leaseTime) == null;
+    }
+
+    /**
+     * 阻塞获取许可，接受超时时间
+     * @param timeout 获取超时时间，单位S
+     */
+    public boolean acquire(String key, String permitId, int permits, int leaseTime, int timeout)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        for(; ;){
+            CountDownLatch latch = releaseSubscriber.register(key);
+            try {
+                Long ttl = doAcquire(key, permitId, permits, leaseTime);
+                if (ttl == null) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                latch.await(releaseSubscriber.waitTime(ttl, remaining), TimeUnit.MILLISECONDS);
+            } finally {
+                releaseSubscriber.unregister(key, latch);
+            }
+        }
+    }
+
+    /**
+     * 释放许可, 唤醒等待者
+     */
+    public boolean release(String key, String permitId) {
+        Long result = scriptExecutor.eval(RELEASE_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                Collections.singletonList(key),
+                Arrays.asList(permitId, RedisLockReleaseSubscriber.channelOf(key)));
+        return RELEASE_SUCCESS_FLAG.equals(result);
+    }
+
+    private Long doAcquire(String key, String permitId, int permits, int leaseTime) {
+        return scriptExecutor.eval(ACQUIRE_SCRIPT, RedisScriptExecutor.ReturnType.INTEGER,
+                Collections.singletonList(key),
+                Arrays.asList(permitId, String.valueOf(permits), String.valueOf(leaseTime * 1000L)));
+    }
+}
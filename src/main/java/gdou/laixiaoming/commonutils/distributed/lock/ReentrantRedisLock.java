@@ -2,106 +2,85 @@ package gdou.laixiaoming.commonutils.distributed.lock;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import redis.clients.jedis.JedisPool;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Collection;
+import java.util.Objects;
 
 /**
  * Redis锁-可重入
+ * 持有次数以hash结构保存在Redis中, 以val标识持有者, 同一val可重复获取,
+ * 重入不依赖线程, 可跨线程或异步阶段传递持有者
+ * 释放时只减少持有者自身的持有次数; 不带val的释放使用本JVM中获取该锁的持有者
  */
 @Component
 public class ReentrantRedisLock implements DistributedLock{
 
-    private ThreadLocal<Map<String, AtomicInteger>> locksHolder = new ThreadLocal<>();
-
-    private DistributedLock redisLock;
+    private RedisLock redisLock;
 
     @Autowired
-    public ReentrantRedisLock(JedisPool jedisPool) {
-        this.redisLock = new RedisLock(jedisPool);
-    }
-
-    protected Map<String, AtomicInteger> getLocks() {
-        Map<String, AtomicInteger> locks = locksHolder.get();
-        if (locks != null) {
-            return locks;
-        }
-        locksHolder.set(new HashMap<>());
-        return locksHolder.get();
+    public ReentrantRedisLock(RedisScriptExecutor scriptExecutor,
+                              RedisLockReleaseSubscriber releaseSubscriber,
+                              RedisLockWatchdog watchdog,
+                              LockMetrics lockMetrics) {
+        this.redisLock = new RedisLock(scriptExecutor, releaseSubscriber, watchdog, lockMetrics, true);
     }
 
     @Override
     public boolean tryLock(String lockKey, String val, int lockTime) {
-        Map<String, AtomicInteger> locks = getLocks();
-        AtomicInteger lockCount = locks.get(lockKey);
-        if(lockCount != null) {
-            lockCount.incrementAndGet();
-            return true;
-        }
-        if(doTryLock(lockKey, val, lockTime)) {
-            locks.put(lockKey, new AtomicInteger(1));
-            return true;
-        }
-        return false;
+        return redisLock.tryLock(lockKey, val, lockTime);
     }
 
     @Override
     public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
-        Map<String, AtomicInteger> locks = getLocks();
-        AtomicInteger lockCount = locks.get(lockKey);
-        if(lockCount != null) {
-            lockCount.incrementAndGet();
-            return ;
-        }
-        doLock(lockKey, val, lockTime);
-        locks.put(lockKey, new AtomicInteger(1));
+        redisLock.lock(lockKey, val, lockTime);
     }
 
     @Override
     public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
-        Map<String, AtomicInteger> locks = getLocks();
-        AtomicInteger lockCount = locks.get(lockKey);
-        if(lockCount != null) {
-            lockCount.incrementAndGet();
-            return true;
-        }
-        if(doLock(lockKey, val, lockTime, timeout)) {
-            locks.put(lockKey, new AtomicInteger(1));
-            return true;
-        }
-        return false;
+        return redisLock.lock(lockKey, val, lockTime, timeout);
     }
 
+    /**
+     * 本JVM中持有者的持有次数减一, 归零时释放锁
+     * @param lockKey
+     * @return
+     */
     @Override
     public boolean unlock(String lockKey) {
-        Map<String, AtomicInteger> locks = getLocks();
-        AtomicInteger lockCount = locks.get(lockKey);
-        if(lockCount == null) {
-            return false;
-        }
-        int newLockCount = lockCount.decrementAndGet();
-        if(newLockCount > 0) {
-            return true;
-        }
-        locks.remove(lockKey);
-        return doUnLock(lockKey);
+        return redisLock.unlock(lockKey);
     }
 
-    private boolean doTryLock(String lockKey, String val, int lockTime) {
-        return redisLock.tryLock(lockKey, val, lockTime);
+    /**
+     * 持有者的持有次数减一, 归零时释放锁, 非持有者释放返回false
+     * @param lockKey
+     * @param val 持有者
+     * @return
+     */
+    public boolean unlock(String lockKey, String val) {
+        return redisLock.unlock(lockKey, val);
     }
 
-    private void doLock(String lockKey, String val, int lockTime) throws InterruptedException {
-        redisLock.lock(lockKey, val, lockTime);
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        return redisLock.tryLock(lockKeys, val, lockTime);
     }
 
-    private boolean doLock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
-        return redisLock.lock(lockKey, val, lockTime, timeout);
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        redisLock.lock(lockKeys, val, lockTime);
     }
 
-    private boolean doUnLock(String lockKey) {
-        return redisLock.unlock(lockKey);
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        return redisLock.lock(lockKeys, val, lockTime, timeout);
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        return redisLock.unlock(lockKeys);
+    }
+
+    public boolean unlock(Collection<String> lockKeys, String val) {
+        return redisLock.unlock(lockKeys, Objects.requireNonNull(val));
     }
 }
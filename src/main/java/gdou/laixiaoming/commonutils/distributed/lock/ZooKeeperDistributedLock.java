@@ -1,36 +1,63 @@
 package gdou.laixiaoming.commonutils.distributed.lock;
 
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
 import org.apache.zookeeper.*;
 import org.apache.zookeeper.data.Stat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 /**
  * ZK分布式锁
+ * 每个lockKey使用独立的父节点root/lockKey, 等待者在其下创建顺序节点并按序号排队;
+ * 只监听前一节点, 仅在前一节点删除后才重新获取子节点列表, 读取量与其他lockKey的等待者无关
+ * 创建节点与获取子节点列表使用异步接口流水线发送, 同一会话的请求按序处理, 一次往返即可判断是否获取到锁;
+ * 获取失败时的删除和锁释放均异步发送, 不等待结果
+ * 获取时独占父节点的持有者释放后顺带尝试删除父节点, 避免lockKey的父节点无限累积; 父节点被删除后再次加锁时重建
  */
 public class ZooKeeperDistributedLock {
 
     private static final Logger logger = LoggerFactory.getLogger(ZooKeeperDistributedLock.class);
 
+    /**
+     * 顺序节点的名称前缀
+     */
+    static final String NODE_PREFIX = "lock-";
+
+    /**
+     * 顺序节点的序号长度
+     */
+    private static final int SEQUENCE_LENGTH = 10;
+
     private ZooKeeper zk;
 
+    /**
+     * 由连接提供客户端时, 连接断开后等待重连, 会话过期后等待失败
+     */
+    private ZooKeeperConnection connection;
+
     private String root;
     private String lockKey;
-    private String path;
+    private String parent;
 
-    private static final byte[] data = new byte[0];
-    private ThreadLocal<String> nodeHolder = new ThreadLocal<>();
+    private ThreadLocal<ZooKeeperLockNodes.Held> nodeHolder = new ThreadLocal<>();
+
+    private LockStats stats;
 
     public ZooKeeperDistributedLock(ZooKeeper zk, String root, String lockKey) {
+        this(zk, root, lockKey, LockMetrics.NOOP);
+    }
+
+    public ZooKeeperDistributedLock(ZooKeeper zk, String root, String lockKey, LockMetrics lockMetrics) {
         this.zk = zk;
+        this.stats = lockMetrics.stats("zookeeper");
         this.root = root;
         this.lockKey = lockKey;
-        this.path = root + "/" + lockKey;
+        this.parent = root + "/" + lockKey;
         try{
             init();
         } catch (Exception e) {
@@ -38,12 +65,25 @@ public class ZooKeeperDistributedLock {
         }
     }
 
+    /**
+     * 由{@link ZooKeeperLock}创建, 根节点已存在, lockKey的父节点在加锁时按需创建, 构造不访问ZK
+     */
+    ZooKeeperDistributedLock(ZooKeeperConnection connection, String root, String lockKey, LockMetrics lockMetrics) {
+        this.connection = connection;
+        this.stats = lockMetrics.stats("zookeeper");
+        this.root = root;
+        this.lockKey = lockKey;
+        this.parent = root + "/" + lockKey;
+    }
+
     private void init() throws KeeperException, InterruptedException {
-        Stat stat = zk.exists(root, false);
-        if (stat == null) {
-            // 创建根节点
-            zk.create(root, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
-        }
+        // 创建根节点及lockKey的父节点
+        ZooKeeperLockNodes.createIfAbsent(zk, root);
+        ZooKeeperLockNodes.createIfAbsent(zk, parent);
+    }
+
+    private ZooKeeper zk() {
+        return connection != null ? connection.getZooKeeper() : zk;
     }
 
     /**
@@ -51,20 +91,24 @@ public class ZooKeeperDistributedLock {
      * @return
      */
     public boolean tryLock() {
+        long start = System.nanoTime();
         String currentNode = null;
         try {
-            currentNode = zk.create(path, data,
-                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
-            TreeSet<String> sortedNodeSet = getRootChildren();
-            if (sortedNodeSet.first().equals(currentNode)) {
-                nodeHolder.set(currentNode);
+            ZooKeeperLockNodes.Enqueued enqueued = enqueue();
+            currentNode = enqueued.node;
+            List<String> children = ZooKeeperLockNodes.await(enqueued.children);
+            if (preNodeOf(currentNode, children) == null) {
+                nodeHolder.set(new ZooKeeperLockNodes.Held(currentNode, children));
+                stats.acquired(lockKey, start, 1);
                 return true;
             }
             deleteNode(currentNode);
         } catch (Exception e) {
+            stats.error();
             deleteNode(currentNode);
             throw new RuntimeException(e);
         }
+        stats.failed(lockKey, start, 1);
         return false;
     }
 
@@ -72,34 +116,8 @@ public class ZooKeeperDistributedLock {
      * 等待获取锁
      */
     public void waitForLock() {
-        try {
-            String currentNode = zk.create(path, data,
-                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
-            TreeSet<String> sortedNodeSet = getRootChildren();
-            if (sortedNodeSet.first().equals(currentNode)) {
-                nodeHolder.set(currentNode);
-                logger.info("获取{}", currentNode);
-                return ;
-            }
-
-            CountDownLatch latch = new CountDownLatch(1);
-            Stat stat = null;
-            String preNode = currentNode;
-            do {
-                preNode = sortedNodeSet.lower(preNode);
-                if(preNode == null) {
-                    nodeHolder.set(currentNode);
-                    return ;
-                }
-                stat = zk.exists(preNode, new UnLockWatcher(latch, currentNode));
-            }while (stat == null);
-
-            latch.await();
-            nodeHolder.set(currentNode);
-            latch = null;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        doWaitForLock(-1);
+        logger.info("获取{}", nodeHolder.get().node);
     }
 
     /**
@@ -109,123 +127,153 @@ public class ZooKeeperDistributedLock {
      * @return
      */
     public boolean waitForLock(int timeout, TimeUnit timeUnit) {
+        return doWaitForLock(timeUnit.toMillis(timeout));
+    }
+
+    /**
+     * @param timeout 超时时间(ms), 小于0时一直等待
+     */
+    private boolean doWaitForLock(long timeout) {
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout;
         String currentNode = null;
         try {
-            currentNode = zk.create(path, data,
-                    ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
-            TreeSet<String> sortedNodeSet = getRootChildren();
-            if (sortedNodeSet.first().equals(currentNode)) {
-                nodeHolder.set(currentNode);
-                return true;
-            }
-
-            CountDownLatch latch = new CountDownLatch(1);
-            Stat stat = null;
-            String preNode = currentNode;
-            do {
-                preNode = sortedNodeSet.lower(preNode);
-                if(preNode == null) {
-                    nodeHolder.set(currentNode);
+            ZooKeeperLockNodes.Enqueued enqueued = enqueue();
+            currentNode = enqueued.node;
+            CompletableFuture<List<String>> children = enqueued.children;
+            String currentName = currentNode.substring(parent.length() + 1);
+            for (int attempts = 1; ; attempts++) {
+                List<String> currentChildren = ZooKeeperLockNodes.await(children);
+                if (!currentChildren.contains(currentName)) {
+                    //会话过期, 临时节点已被删除
+                    throw new KeeperException.SessionExpiredException();
+                }
+                String preNode = preNodeOf(currentNode, currentChildren);
+                if (preNode == null) {
+                    nodeHolder.set(new ZooKeeperLockNodes.Held(currentNode, currentChildren));
+                    stats.acquired(lockKey, start, attempts);
                     return true;
                 }
-                stat = zk.exists(preNode, new UnLockWatcher(latch, currentNode));
-            }while (stat == null);
-
-            boolean result = latch.await(timeout, timeUnit);
-            if(!result) {
-                deleteNode(currentNode);
-                return false;
+                CountDownLatch latch = new CountDownLatch(1);
+                //前一节点删除或连接状态变化时唤醒
+                Stat stat = zk().exists(parent + "/" + preNode, event -> {
+                    if (event.getType() == Watcher.Event.EventType.NodeDeleted
+                            || event.getType() == Watcher.Event.EventType.None) {
+                        latch.countDown();
+                    }
+                });
+                if (stat == null) {
+                    //前一节点已删除, 重新检查
+                    children = getChildren();
+                    continue;
+                }
+                if (timeout < 0) {
+                    latch.await();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0 || !latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                        deleteNode(currentNode);
+                        stats.failed(lockKey, start, attempts);
+                        return false;
+                    }
+                }
+                awaitConnected();
+                children = getChildren();
             }
-            nodeHolder.set(currentNode);
-            latch = null;
-            return true;
         } catch (Exception e) {
+            stats.error();
             deleteNode(currentNode);
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 连接断开时最多等待一个会话超时时间, 期间重连则继续等待锁, 否则失败
+     */
+    private void awaitConnected() throws KeeperException, InterruptedException {
+        if (connection != null && !connection.awaitConnected(connection.getSessionTimeout())) {
+            throw new KeeperException.ConnectionLossException();
+        }
+    }
+
+    /**
+     * 当前线程是否持有锁
+     */
+    public boolean isHeldByCurrentThread() {
+        return nodeHolder.get() != null;
+    }
+
     /**
      * 锁释放
      */
     public void unlock() {
         try {
-            if(nodeHolder.get() == null) {
+            ZooKeeperLockNodes.Held held = nodeHolder.get();
+            if(held == null) {
                 return ;
             }
-            deleteNode(nodeHolder.get());
+            ZooKeeperLockNodes.release(zk(), held, parent, stats);
             nodeHolder.remove();
+            stats.released(lockKey);
         } catch (Exception e) {
+            stats.error();
             throw new RuntimeException(e);
         }
     }
 
-    private TreeSet<String> getRootChildren() {
-        try {
-            List<String> rootChildren = zk.getChildren(root, false);
-            TreeSet<String> sortedNodeSet = new TreeSet<>();
-            for (String node : rootChildren) {
-                sortedNodeSet.add(root + "/" + node);
-            }
-            return sortedNodeSet;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    private ZooKeeperLockNodes.Enqueued enqueue() throws Exception {
+        return ZooKeeperLockNodes.enqueue(zk(), parent, NODE_PREFIX);
+    }
+
+    private CompletableFuture<List<String>> getChildren() {
+        return ZooKeeperLockNodes.getChildren(zk(), parent);
     }
 
     private void deleteNode(String path) {
-        try{
-            zk.delete(path, -1);
-        }catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+        ZooKeeperLockNodes.deleteNode(zk(), path, stats);
     }
 
     /**
-     * 锁等待监听
+     * 序号小于当前节点的最大节点, 不存在时返回null
+     * @param currentNode 当前节点的完整路径
+     * @param children 父节点下的子节点名称
      */
-    private class UnLockWatcher implements Watcher {
-
-        private CountDownLatch countDownLatch;
-        private String currentNode;
-
-        public UnLockWatcher(CountDownLatch countDownLatch, String currentNode) {
-            this.countDownLatch = countDownLatch;
-            this.currentNode = currentNode;
-        }
+    static String preNodeOf(String currentNode, List<String> children) {
+        return preNodeOf(currentNode, children, false);
+    }
 
-        @Override
-        public void process(WatchedEvent event) {
-            if(event.getType() != Event.EventType.NodeDeleted) {
-                return ;
-            }
-            TreeSet<String> sortedNodeSet = getRootChildren();
-            //节点已被删除
-            if(!sortedNodeSet.contains(currentNode)) {
-                return ;
-            }
-            String firstNode = sortedNodeSet.first();
-            //当前节点是第一个节点, 即认为获取到了锁, 否则继续监听前一节点
-            if(currentNode.equals(firstNode)){
-                countDownLatch.countDown();
-                return ;
+    /**
+     * @param shared 是否为共享(读)节点, 共享节点只需等待前面的非共享节点
+     */
+    static String preNodeOf(String currentNode, List<String> children, boolean shared) {
+        long sequence = sequenceOf(currentNode.substring(currentNode.lastIndexOf('/') + 1));
+        String preNode = null;
+        long preSequence = -1;
+        for (String child : children) {
+            if (shared && child.startsWith(ZooKeeperReadWriteLock.READ_PREFIX)) {
+                continue;
             }
-            try{
-                Stat stat = null;
-                String preNode = currentNode;
-                do {
-                    preNode = sortedNodeSet.lower(preNode);
-                    if(preNode == null) {
-                        countDownLatch.countDown();
-                        return ;
-                    }
-                    //继续监听前一个节点
-                    stat = zk.exists(preNode, this);
-                }while (stat == null);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            long childSequence = sequenceOf(child);
+            if (childSequence >= 0 && childSequence < sequence && childSequence > preSequence) {
+                preNode = child;
+                preSequence = childSequence;
             }
         }
+        return preNode;
+    }
+
+    /**
+     * 解析节点序号, 同一父节点下各类锁节点共用一个序号, 非锁节点返回-1
+     */
+    private static long sequenceOf(String name) {
+        if (name.length() <= SEQUENCE_LENGTH) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(name.length() - SEQUENCE_LENGTH));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
 }
@@ -0,0 +1,332 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * ZK选主
+ * 与{@link ZooKeeperDistributedLock}相同, 在root/name下创建临时顺序节点, 序号最小者为主节点;
+ * 主节点在整个会话期间保持身份, 定时任务只需检查{@link #isLeader()}, 不必每次访问ZooKeeper
+ * 连接断开时立即放弃主节点身份, 重连后重新确认; 会话过期后以新会话重新参与选主
+ * 节点名带有本实例的UUID前缀, 创建时连接断开则重连后先按前缀查找, 节点已创建时直接沿用, 避免遗留孤儿节点阻塞选主
+ * 监听回调在ZK事件线程上执行, 不应阻塞
+ */
+public class ZooKeeperLeaderElection implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZooKeeperLeaderElection.class);
+
+    private static final byte[] data = new byte[0];
+
+    /**
+     * 主节点身份变化监听
+     */
+    public interface LeaderListener {
+
+        /**
+         * 成为主节点
+         */
+        void isLeader();
+
+        /**
+         * 失去主节点身份
+         */
+        void notLeader();
+    }
+
+    private ZooKeeperConnection connection;
+
+    private String root;
+
+    private String parent;
+
+    /**
+     * 本实例的节点名前缀
+     */
+    private final String nodePrefix = ZooKeeperDistributedLock.NODE_PREFIX + UUID.randomUUID() + "-";
+
+    private final List<LeaderListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Watcher connectionListener = this::onConnectionEvent;
+
+    private volatile boolean leader;
+
+    /**
+     * 当前参与选主的节点及创建该节点的客户端
+     */
+    private String node;
+    private ZooKeeper joinedWith;
+
+    private boolean started;
+
+    private boolean closed;
+
+    /**
+     * @param connection
+     * @param root 根节点
+     * @param name 选主名称, 同名的参与者竞争同一主节点
+     */
+    public ZooKeeperLeaderElection(ZooKeeperConnection connection, String root, String name) {
+        this.connection = connection;
+        this.root = root;
+        this.parent = root + "/" + name;
+    }
+
+    public void addListener(LeaderListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 开始参与选主
+     */
+    public synchronized void start() {
+        if (started) {
+            return ;
+        }
+        started = true;
+        try {
+            createIfAbsent(root);
+            createIfAbsent(parent);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        connection.addListener(connectionListener);
+        join();
+    }
+
+    /**
+     * 是否为主节点, 只读取本地状态
+     */
+    public boolean isLeader() {
+        return leader;
+    }
+
+    private void createIfAbsent(String path) throws KeeperException, InterruptedException {
+        ZooKeeper zk = connection.getZooKeeper();
+        if (zk.exists(path, false) != null) {
+            return ;
+        }
+        try {
+            zk.create(path, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 已被其他客户端创建
+        }
+    }
+
+    /**
+     * 以当前会话参与选主, 同一会话中之前的创建结果未知时先查找已创建的节点
+     */
+    private synchronized void join() {
+        if (closed) {
+            return ;
+        }
+        ZooKeeper zk = connection.getZooKeeper();
+        if (zk != joinedWith) {
+            //新会话, 之前的临时节点已随旧会话删除
+            joinedWith = zk;
+            node = null;
+            create(zk);
+            return ;
+        }
+        node = null;
+        zk.getChildren(parent, false, (rc, path, ctx, children) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK) {
+                //连接恢复后重试
+                logger.warn("获取选主节点{}失败: {}", parent, code);
+                return ;
+            }
+            onRecovered(zk, children);
+        }, null);
+    }
+
+    private void create(ZooKeeper zk) {
+        zk.create(parent + "/" + nodePrefix, data,
+                ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL,
+                (rc, path, ctx, name) -> onCreated(zk, KeeperException.Code.get(rc), name), null);
+    }
+
+    /**
+     * 沿用本实例在当前会话中已创建的节点, 多于一个时只保留序号最小的, 不存在时再创建
+     */
+    private synchronized void onRecovered(ZooKeeper zk, List<String> children) {
+        if (zk != joinedWith || node != null) {
+            return ;
+        }
+        List<String> owned = new ArrayList<>();
+        for (String child : children) {
+            if (child.startsWith(nodePrefix)) {
+                owned.add(child);
+            }
+        }
+        if (closed) {
+            for (String child : owned) {
+                deleteNode(zk, parent + "/" + child);
+            }
+            return ;
+        }
+        if (owned.isEmpty()) {
+            create(zk);
+            return ;
+        }
+        //前缀相同, 定长序号按字典序即按序号排列
+        Collections.sort(owned);
+        for (int i = 1; i < owned.size(); i++) {
+            deleteNode(zk, parent + "/" + owned.get(i));
+        }
+        node = parent + "/" + owned.get(0);
+        logger.info("沿用选主节点{}", node);
+        check();
+    }
+
+    private synchronized void onCreated(ZooKeeper zk, KeeperException.Code code, String name) {
+        if (zk != joinedWith) {
+            return ;
+        }
+        if (code != KeeperException.Code.OK) {
+            //连接断开时节点可能已创建, 重连后按前缀查找
+            logger.warn("选主节点{}创建失败: {}", parent, code);
+            if (code == KeeperException.Code.CONNECTIONLOSS && connection.isConnected()) {
+                join();
+            }
+            return ;
+        }
+        if (closed || node != null) {
+            //已退出, 或重复参与时已沿用其他节点
+            deleteNode(zk, name);
+            return ;
+        }
+        node = name;
+        check();
+    }
+
+    /**
+     * 自己是序号最小的节点即成为主节点, 否则监听前一节点
+     */
+    private synchronized void check() {
+        if (closed || node == null) {
+            return ;
+        }
+        ZooKeeper zk = joinedWith;
+        String current = node;
+        zk.getChildren(parent, false, (rc, path, ctx, children) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK) {
+                logger.warn("获取选主节点{}失败: {}", parent, code);
+                return ;
+            }
+            onChildren(zk, current, children);
+        }, null);
+    }
+
+    private synchronized void onChildren(ZooKeeper zk, String current, List<String> children) {
+        if (closed || zk != joinedWith || !current.equals(node)) {
+            return ;
+        }
+        if (!children.contains(current.substring(parent.length() + 1))) {
+            //节点已不存在, 重新参与
+            setLeader(false);
+            join();
+            return ;
+        }
+        String preNode = ZooKeeperDistributedLock.preNodeOf(current, children);
+        if (preNode == null) {
+            setLeader(true);
+            return ;
+        }
+        setLeader(false);
+        zk.exists(parent + "/" + preNode, event -> {
+            if (event.getType() == Watcher.Event.EventType.NodeDeleted) {
+                check();
+            }
+        }, (rc, path, ctx, stat) -> {
+            if (KeeperException.Code.get(rc) == KeeperException.Code.NONODE) {
+                check();
+            }
+        }, null);
+    }
+
+    private void onConnectionEvent(WatchedEvent event) {
+        switch (event.getState()) {
+            case Disconnected:
+            case Expired:
+                //无法确认自己仍是主节点
+                setLeader(false);
+                break;
+            case SyncConnected:
+                reconnected();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private synchronized void reconnected() {
+        if (closed) {
+            return ;
+        }
+        if (connection.getZooKeeper() != joinedWith || node == null) {
+            //会话已重建或节点未创建成功
+            join();
+        } else {
+            check();
+        }
+    }
+
+    private synchronized void setLeader(boolean leader) {
+        if (this.leader == leader) {
+            return ;
+        }
+        this.leader = leader;
+        logger.info(leader ? "成为{}的主节点" : "失去{}的主节点身份", parent);
+        for (LeaderListener listener : listeners) {
+            try {
+                if (leader) {
+                    listener.isLeader();
+                } else {
+                    listener.notLeader();
+                }
+            } catch (Exception e) {
+                logger.warn("选主监听执行失败", e);
+            }
+        }
+    }
+
+    private void deleteNode(ZooKeeper zk, String path) {
+        zk.delete(path, -1, (rc, p, ctx) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK && code != KeeperException.Code.NONODE) {
+                logger.warn("删除节点{}失败: {}", p, code);
+            }
+        }, null);
+    }
+
+    /**
+     * 退出选主, 主节点退出后由下一个参与者接替
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return ;
+        }
+        closed = true;
+        connection.removeListener(connectionListener);
+        if (node != null) {
+            deleteNode(joinedWith, node);
+            node = null;
+        }
+        setLeader(false);
+    }
+}
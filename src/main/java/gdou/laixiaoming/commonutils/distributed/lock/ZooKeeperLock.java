@@ -0,0 +1,232 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import gdou.laixiaoming.commonutils.config.ZooKeeperProperties;
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZK分布式锁
+ * 按lockKey缓存{@link ZooKeeperDistributedLock}, 以持有者和等待者计数, 计数归零时移除, 缓存大小与活跃lockKey数量一致
+ * 根节点只在首次使用时检查, lockKey的父节点在加锁时按需创建
+ * 延迟创建, 未使用ZK锁的应用启动时不依赖ZooKeeper可用
+ * 注意: lockTime不生效, 锁随会话失效而释放; 锁由加锁线程持有, 需在同一线程释放
+ */
+@Lazy
+@Component
+public class ZooKeeperLock implements DistributedLock {
+
+    private ZooKeeperConnection connection;
+
+    private String root;
+
+    private LockMetrics lockMetrics;
+
+    private volatile boolean rootCreated;
+
+    private final Map<String, LockEntry> locks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ZooKeeperLock(ZooKeeperConnection connection, ZooKeeperProperties properties, LockMetrics lockMetrics) {
+        this.connection = connection;
+        this.root = properties.getLockRoot();
+        this.lockMetrics = lockMetrics;
+    }
+
+    /**
+     * 首次使用时创建根节点
+     */
+    private void ensureRoot() {
+        if (rootCreated) {
+            return ;
+        }
+        synchronized (this) {
+            if (rootCreated) {
+                return ;
+            }
+            try {
+                createRoot();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            rootCreated = true;
+        }
+    }
+
+    private void createRoot() throws KeeperException, InterruptedException {
+        if (!connection.awaitConnected(connection.getSessionTimeout())) {
+            throw new KeeperException.ConnectionLossException();
+        }
+        ZooKeeper zk = connection.getZooKeeper();
+        if (zk.exists(root, false) != null) {
+            return ;
+        }
+        try {
+            // 创建根节点
+            zk.create(root, new byte[0], ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 已被其他客户端创建
+        }
+    }
+
+    /**
+     * 获取lockKey的锁并增加计数, 获取失败或释放后需调用{@link #release(String)}
+     */
+    private ZooKeeperDistributedLock retain(String lockKey) {
+        ensureRoot();
+        return locks.compute(lockKey, (key, entry) -> {
+            if (entry == null) {
+                entry = new LockEntry(new ZooKeeperDistributedLock(connection, root, key, lockMetrics));
+            }
+            entry.refs++;
+            return entry;
+        }).lock;
+    }
+
+    private void release(String lockKey) {
+        locks.computeIfPresent(lockKey, (key, entry) -> --entry.refs == 0 ? null : entry);
+    }
+
+    @Override
+    public boolean tryLock(String lockKey, String val, int lockTime) {
+        boolean locked = false;
+        try {
+            locked = retain(lockKey).tryLock();
+            return locked;
+        } finally {
+            if (!locked) {
+                release(lockKey);
+            }
+        }
+    }
+
+    @Override
+    public void lock(String lockKey, String val, int lockTime) throws InterruptedException {
+        boolean locked = false;
+        try {
+            retain(lockKey).waitForLock();
+            locked = true;
+        } finally {
+            if (!locked) {
+                release(lockKey);
+            }
+        }
+    }
+
+    @Override
+    public boolean lock(String lockKey, String val, int lockTime, int timeout) throws InterruptedException {
+        boolean locked = false;
+        try {
+            locked = retain(lockKey).waitForLock(timeout, TimeUnit.SECONDS);
+            return locked;
+        } finally {
+            if (!locked) {
+                release(lockKey);
+            }
+        }
+    }
+
+    @Override
+    public boolean unlock(String lockKey) {
+        LockEntry entry = locks.get(lockKey);
+        if (entry == null || !entry.lock.isHeldByCurrentThread()) {
+            return false;
+        }
+        try {
+            entry.lock.unlock();
+        } finally {
+            release(lockKey);
+        }
+        return true;
+    }
+
+    /**
+     * 批量获取锁, 按key的顺序逐个获取, 任意一个失败则释放已获取的锁
+     */
+    @Override
+    public boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+        List<String> locked = new ArrayList<>();
+        for (String lockKey : new TreeSet<>(lockKeys)) {
+            if (!tryLock(lockKey, val, lockTime)) {
+                unlock(locked);
+                return false;
+            }
+            locked.add(lockKey);
+        }
+        return true;
+    }
+
+    @Override
+    public void lock(Collection<String> lockKeys, String val, int lockTime) throws InterruptedException {
+        List<String> locked = new ArrayList<>();
+        try {
+            //固定加锁顺序避免死锁
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                lock(lockKey, val, lockTime);
+                locked.add(lockKey);
+            }
+            locked.clear();
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        List<String> locked = new ArrayList<>();
+        try {
+            for (String lockKey : new TreeSet<>(lockKeys)) {
+                long remaining = deadline - System.currentTimeMillis();
+                int remainingSeconds = (int) Math.max((remaining + 999) / 1000, 0);
+                if (!lock(lockKey, val, lockTime, remainingSeconds)) {
+                    return false;
+                }
+                locked.add(lockKey);
+            }
+            locked.clear();
+            return true;
+        } finally {
+            unlock(locked);
+        }
+    }
+
+    @Override
+    public boolean unlock(Collection<String> lockKeys) {
+        boolean result = true;
+        for (String lockKey : lockKeys) {
+            result &= unlock(lockKey);
+        }
+        return result;
+    }
+
+    /**
+     * 缓存的锁及其持有者和等待者数量, 计数只在{@link ConcurrentHashMap#compute}中修改
+     */
+    private static class LockEntry {
+
+        final ZooKeeperDistributedLock lock;
+
+        int refs;
+
+        LockEntry(ZooKeeperDistributedLock lock) {
+            this.lock = lock;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ZK锁节点的公共操作, 各类ZK锁的节点都位于父节点root/lockKey下, 以节点名前缀区分
+ * 创建节点与获取子节点列表使用异步接口流水线发送, 删除节点异步发送不等待结果
+ * 只有获取锁时父节点下仅有自身节点的持有者, 释放时才顺带尝试删除父节点, 避免每次释放都多发一个请求;
+ * 获取失败时只删除自身节点, 此时必有其他节点在前。属于尽力清理, 有排队者时不保证删除
+ */
+final class ZooKeeperLockNodes {
+
+    private static final Logger logger = LoggerFactory.getLogger(ZooKeeperLockNodes.class);
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private ZooKeeperLockNodes() {
+    }
+
+    /**
+     * 同步创建持久节点, 已存在时忽略
+     */
+    static void createIfAbsent(ZooKeeper zk, String path) throws KeeperException, InterruptedException {
+        if (zk.exists(path, false) != null) {
+            return ;
+        }
+        try {
+            zk.create(path, EMPTY, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+        } catch (KeeperException.NodeExistsException e) {
+            // 已被其他客户端创建
+        }
+    }
+
+    /**
+     * 创建顺序节点并流水线获取子节点列表
+     * 父节点已被空闲清理删除时, 将重建父节点与重试的请求一起流水线发送, 只多一次往返
+     * @param prefix 顺序节点的名称前缀
+     */
+    static Enqueued enqueue(ZooKeeper zk, String parent, String prefix) throws Exception {
+        boolean recreateParent = false;
+        for(; ;){
+            if (recreateParent) {
+                createParent(zk, parent);
+            }
+            CompletableFuture<String> created = createNode(zk, parent, prefix, EMPTY);
+            CompletableFuture<List<String>> children = getChildren(zk, parent);
+            try {
+                return new Enqueued(await(created), children);
+            } catch (KeeperException.NoNodeException e) {
+                recreateParent = true;
+            }
+        }
+    }
+
+    static CompletableFuture<String> createNode(ZooKeeper zk, String parent, String prefix, byte[] data) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        zk.create(parent + "/" + prefix, data, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL,
+                (rc, path, ctx, name) -> {
+                    KeeperException.Code code = KeeperException.Code.get(rc);
+                    if (code == KeeperException.Code.OK) {
+                        future.complete(name);
+                    } else {
+                        future.completeExceptionally(KeeperException.create(code, path));
+                    }
+                }, null);
+        return future;
+    }
+
+    static CompletableFuture<List<String>> getChildren(ZooKeeper zk, String parent) {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        zk.getChildren(parent, false, (rc, path, ctx, children) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code == KeeperException.Code.OK) {
+                future.complete(children);
+            } else {
+                future.completeExceptionally(KeeperException.create(code, path));
+            }
+        }, null);
+        return future;
+    }
+
+    /**
+     * 异步删除节点, 同一会话的后续请求在删除之后处理
+     */
+    static void deleteNode(ZooKeeper zk, String path, LockStats stats) {
+        if (path == null) {
+            return ;
+        }
+        zk.delete(path, -1, (rc, p, ctx) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK && code != KeeperException.Code.NONODE) {
+                stats.error();
+                logger.warn("删除节点{}失败: {}", p, code);
+            }
+        }, null);
+    }
+
+    /**
+     * 释放持有的节点, 获取时独占父节点则顺带尝试删除父节点
+     */
+    static void release(ZooKeeper zk, Held held, String parent, LockStats stats) {
+        deleteNode(zk, held.node, stats);
+        if (held.alone) {
+            deleteIfEmpty(zk, parent);
+        }
+    }
+
+    /**
+     * 异步创建父节点, 已存在时忽略
+     */
+    static void createParent(ZooKeeper zk, String path) {
+        zk.create(path, EMPTY, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT, (rc, p, ctx, name) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK && code != KeeperException.Code.NODEEXISTS) {
+                logger.warn("创建父节点{}失败: {}", p, code);
+            }
+        }, null);
+    }
+
+    /**
+     * 异步删除空闲的父节点, 仍有子节点或已被删除时忽略
+     * 在此期间其他客户端创建子节点会因父节点不存在而失败, 由加锁方重建后重试
+     */
+    static void deleteIfEmpty(ZooKeeper zk, String path) {
+        zk.delete(path, -1, (rc, p, ctx) -> {
+            KeeperException.Code code = KeeperException.Code.get(rc);
+            if (code != KeeperException.Code.OK && code != KeeperException.Code.NOTEMPTY
+                    && code != KeeperException.Code.NONODE) {
+                logger.warn("删除父节点{}失败: {}", p, code);
+            }
+        }, null);
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * 已创建的顺序节点及流水线发送的子节点列表请求
+     */
+    static class Enqueued {
+
+        final String node;
+
+        final CompletableFuture<List<String>> children;
+
+        Enqueued(String node, CompletableFuture<List<String>> children) {
+            this.node = node;
+            this.children = children;
+        }
+    }
+
+    /**
+     * 持有的节点
+     */
+    static class Held {
+
+        final String node;
+
+        /**
+         * 获取锁时父节点下是否只有自身节点
+         */
+        final boolean alone;
+
+        Held(String node, List<String> children) {
+            this.node = node;
+            this.alone = children.size() == 1;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.apache.zookeeper.*;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ZK读写锁
+ * 读节点只等待序号在其之前最近的写节点, 读者之间互不等待; 写节点等待紧邻的前一节点
+ * 节点与{@link ZooKeeperDistributedLock}位于同一父节点root/lockKey下, 排他锁视同写锁, 二者可互斥
+ * 获取时独占父节点的持有者释放后同样尝试删除父节点, 加锁时父节点不存在则重建
+ */
+public class ZooKeeperReadWriteLock {
+
+    static final String READ_PREFIX = "read-";
+    static final String WRITE_PREFIX = "write-";
+
+    private ZooKeeper zk;
+
+    private String root;
+    private String lockKey;
+    private String parent;
+
+    private ThreadLocal<ZooKeeperLockNodes.Held> readNodeHolder = new ThreadLocal<>();
+    private ThreadLocal<ZooKeeperLockNodes.Held> writeNodeHolder = new ThreadLocal<>();
+
+    private LockStats readStats;
+    private LockStats writeStats;
+
+    public ZooKeeperReadWriteLock(ZooKeeper zk, String root, String lockKey) {
+        this(zk, root, lockKey, LockMetrics.NOOP);
+    }
+
+    public ZooKeeperReadWriteLock(ZooKeeper zk, String root, String lockKey, LockMetrics lockMetrics) {
+        this.zk = zk;
+        this.root = root;
+        this.lockKey = lockKey;
+        this.parent = root + "/" + lockKey;
+        this.readStats = lockMetrics.stats("zookeeper-read");
+        this.writeStats = lockMetrics.stats("zookeeper-write");
+        try{
+            init();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void init() throws KeeperException, InterruptedException {
+        // 创建根节点及lockKey的父节点
+        ZooKeeperLockNodes.createIfAbsent(zk, root);
+        ZooKeeperLockNodes.createIfAbsent(zk, parent);
+    }
+
+    /**
+     * 尝试获取读锁
+     */
+    public boolean tryReadLock() {
+        return doTryLock(true);
+    }
+
+    /**
+     * 等待获取读锁
+     */
+    public void waitForReadLock() {
+        doWaitForLock(true, -1);
+    }
+
+    /**
+     * 等待获取读锁, 接受超时时间
+     */
+    public boolean waitForReadLock(int timeout, TimeUnit timeUnit) {
+        return doWaitForLock(true, timeUnit.toMillis(timeout));
+    }
+
+    /**
+     * 读锁释放
+     */
+    public void unlockRead() {
+        unlock(true);
+    }
+
+    /**
+     * 尝试获取写锁
+     */
+    public boolean tryWriteLock() {
+        return doTryLock(false);
+    }
+
+    /**
+     * 等待获取写锁
+     */
+    public void waitForWriteLock() {
+        doWaitForLock(false, -1);
+    }
+
+    /**
+     * 等待获取写锁, 接受超时时间
+     */
+    public boolean waitForWriteLock(int timeout, TimeUnit timeUnit) {
+        return doWaitForLock(false, timeUnit.toMillis(timeout));
+    }
+
+    /**
+     * 写锁释放
+     */
+    public void unlockWrite() {
+        unlock(false);
+    }
+
+    private boolean doTryLock(boolean shared) {
+        LockStats stats = statsOf(shared);
+        long start = System.nanoTime();
+        String currentNode = null;
+        try {
+            ZooKeeperLockNodes.Enqueued enqueued = enqueue(shared);
+            currentNode = enqueued.node;
+            List<String> children = ZooKeeperLockNodes.await(enqueued.children);
+            if (ZooKeeperDistributedLock.preNodeOf(currentNode, children, shared) == null) {
+                holderOf(shared).set(new ZooKeeperLockNodes.Held(currentNode, children));
+                stats.acquired(lockKey, start, 1);
+                return true;
+            }
+            deleteNode(currentNode, stats);
+        } catch (Exception e) {
+            stats.error();
+            deleteNode(currentNode, stats);
+            throw new RuntimeException(e);
+        }
+        stats.failed(lockKey, start, 1);
+        return false;
+    }
+
+    /**
+     * @param timeout 超时时间(ms), 小于0时一直等待
+     */
+    private boolean doWaitForLock(boolean shared, long timeout) {
+        LockStats stats = statsOf(shared);
+        long start = System.nanoTime();
+        long deadline = System.currentTimeMillis() + timeout;
+        String currentNode = null;
+        try {
+            ZooKeeperLockNodes.Enqueued enqueued = enqueue(shared);
+            currentNode = enqueued.node;
+            CompletableFuture<List<String>> children = enqueued.children;
+            for (int attempts = 1; ; attempts++) {
+                List<String> currentChildren = ZooKeeperLockNodes.await(children);
+                String preNode = ZooKeeperDistributedLock.preNodeOf(currentNode, currentChildren, shared);
+                if (preNode == null) {
+                    holderOf(shared).set(new ZooKeeperLockNodes.Held(currentNode, currentChildren));
+                    stats.acquired(lockKey, start, attempts);
+                    return true;
+                }
+                CountDownLatch latch = new CountDownLatch(1);
+                Stat stat = zk.exists(parent + "/" + preNode, event -> {
+                    if (event.getType() == Watcher.Event.EventType.NodeDeleted
+                            || event.getState() == Watcher.Event.KeeperState.Expired) {
+                        latch.countDown();
+                    }
+                });
+                if (stat == null) {
+                    //前一节点已删除, 重新检查
+                    children = getChildren();
+                    continue;
+                }
+                if (timeout < 0) {
+                    latch.await();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0 || !latch.await(remaining, TimeUnit.MILLISECONDS)) {
+                        deleteNode(currentNode, stats);
+                        stats.failed(lockKey, start, attempts);
+                        return false;
+                    }
+                }
+                children = getChildren();
+            }
+        } catch (Exception e) {
+            stats.error();
+            deleteNode(currentNode, stats);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void unlock(boolean shared) {
+        ThreadLocal<ZooKeeperLockNodes.Held> nodeHolder = holderOf(shared);
+        ZooKeeperLockNodes.Held held = nodeHolder.get();
+        if(held == null) {
+            return ;
+        }
+        LockStats stats = statsOf(shared);
+        ZooKeeperLockNodes.release(zk, held, parent, stats);
+        nodeHolder.remove();
+        stats.released(lockKey);
+    }
+
+    private ThreadLocal<ZooKeeperLockNodes.Held> holderOf(boolean shared) {
+        return shared ? readNodeHolder : writeNodeHolder;
+    }
+
+    private LockStats statsOf(boolean shared) {
+        return shared ? readStats : writeStats;
+    }
+
+    private ZooKeeperLockNodes.Enqueued enqueue(boolean shared) throws Exception {
+        return ZooKeeperLockNodes.enqueue(zk, parent, shared ? READ_PREFIX : WRITE_PREFIX);
+    }
+
+    private CompletableFuture<List<String>> getChildren() {
+        return ZooKeeperLockNodes.getChildren(zk, parent);
+    }
+
+    private void deleteNode(String path, LockStats stats) {
+        ZooKeeperLockNodes.deleteNode(zk, path, stats);
+    }
+}
@@ -0,0 +1,177 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池自动调优, 在监控线程上周期执行
+ * 按区间吞吐量、平均排队耗时和线程利用率做爬山调整:
+ * (1)排队拥塞时增加线程数; 若上次增加后吞吐没有提升, 说明已越过最优点(CPU或下游已饱和), 回退一步并收紧队列上限,
+ *    以快速拒绝代替无限排队, 之后冷却几个周期再继续探测
+ * (2)线程数已达上限仍拥塞时收紧队列上限
+ * (3)利用率低且无排队时减少线程数, 并逐步恢复队列上限
+ * 线程数在[minPoolSize, maxPoolSize]内调整, 核心线程数与最大线程数同时设置
+ * 运行时开启时先将最大线程数收回到当前核心线程数再开始调整; 关闭时恢复线程数区间和队列上限
+ * 调整线程数时持有自身的锁, {@link ThreadPoolExecutorWithMonitor#resize(int, int)}使用同一把锁
+ */
+class AdaptiveTuner implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveTuner.class);
+
+    /**
+     * 吞吐提升低于该比例视为扩容无效
+     */
+    private static final double MIN_GAIN = 0.05;
+
+    /**
+     * 利用率低于该值视为空闲
+     */
+    private static final double LOW_UTILIZATION = 0.5;
+
+    /**
+     * 回退后暂停调整的周期数
+     */
+    private static final int COOLDOWN_TICKS = 3;
+
+    private enum Action {NONE, GROW, SHRINK}
+
+    private final String threadPoolName;
+    private final ThreadPoolExecutor executor;
+    private final LimitedQueue queue;
+    private final ThreadPoolMetrics metrics;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final int minQueueLimit;
+    private final long targetQueueWaitNanos;
+    private final long periodSeconds;
+
+    private volatile boolean enabled;
+
+    private long lastCompleted;
+    private long lastWaitNanos;
+    private long lastWaitCount;
+    private double lastThroughput;
+    private Action lastAction = Action.NONE;
+    private int cooldown;
+
+    AdaptiveTuner(String threadPoolName, ThreadPoolExecutor executor, LimitedQueue queue, ThreadPoolMetrics metrics,
+                  int minPoolSize, int maxPoolSize, long targetQueueWaitNanos, long periodSeconds) {
+        this.threadPoolName = threadPoolName;
+        this.executor = executor;
+        this.queue = queue;
+        this.metrics = metrics;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.minQueueLimit = Math.max(1, queue.getCapacity() / 10);
+        this.targetQueueWaitNanos = targetQueueWaitNanos;
+        this.periodSeconds = periodSeconds;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return ;
+        }
+        if (enabled) {
+            //未开启调优时最大线程数只是扩容上限, 以核心线程数作为当前线程数
+            resize(executor.getCorePoolSize());
+            lastAction = Action.NONE;
+            cooldown = 0;
+        } else {
+            executor.setMaximumPoolSize(Math.max(maxPoolSize, executor.getMaximumPoolSize()));
+            executor.setCorePoolSize(minPoolSize);
+            queue.setLimit(queue.getCapacity());
+            logger.info("{} auto tuning disabled: pool size [{}, {}], queue limit {}",
+                    threadPoolName, minPoolSize, executor.getMaximumPoolSize(), queue.getCapacity());
+        }
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run() {
+        try {
+            tick();
+        } catch (Exception e) {
+            //异常不能抛出, 否则后续周期不再执行
+            logger.warn("{} auto tuning failed", threadPoolName, e);
+        }
+    }
+
+    private synchronized void tick() {
+        long completed = executor.getCompletedTaskCount();
+        long waitNanos = metrics.queueWaitNanos();
+        long waitCount = metrics.queueWaitCount();
+        double throughput = (double) (completed - lastCompleted) / periodSeconds;
+        long meanWait = waitCount > lastWaitCount ? (waitNanos - lastWaitNanos) / (waitCount - lastWaitCount) : 0;
+        lastCompleted = completed;
+        lastWaitNanos = waitNanos;
+        lastWaitCount = waitCount;
+        if (!enabled) {
+            lastAction = Action.NONE;
+            return ;
+        }
+
+        int size = executor.getMaximumPoolSize();
+        int active = executor.getActiveCount();
+        int queued = queue.size();
+        int step = Math.max(1, size / 5);
+        boolean congested = meanWait > targetQueueWaitNanos || (queued > 0 && active >= size);
+        Action action = Action.NONE;
+        if (cooldown > 0) {
+            cooldown--;
+        } else if (congested) {
+            if (lastAction == Action.GROW && throughput < lastThroughput * (1 + MIN_GAIN)) {
+                resize(size - step);
+                setQueueLimit(queue.getLimit() / 2);
+                cooldown = COOLDOWN_TICKS;
+            } else if (size < maxPoolSize) {
+                resize(size + step);
+                action = Action.GROW;
+            } else if (meanWait > targetQueueWaitNanos) {
+                setQueueLimit(queue.getLimit() / 2);
+            }
+        } else if ((double) active / size < LOW_UTILIZATION && queued == 0) {
+            if (size > minPoolSize) {
+                resize(size - step);
+                action = Action.SHRINK;
+            }
+            setQueueLimit(queue.getLimit() * 2);
+        }
+        lastAction = action;
+        lastThroughput = throughput;
+    }
+
+    /**
+     * 同时设置核心线程数与最大线程数, 保证设置过程中核心线程数不超过最大线程数
+     */
+    private void resize(int target) {
+        target = Math.max(minPoolSize, Math.min(maxPoolSize, target));
+        int size = executor.getMaximumPoolSize();
+        if (target == size) {
+            return ;
+        }
+        if (target > size) {
+            executor.setMaximumPoolSize(target);
+            executor.setCorePoolSize(target);
+        } else {
+            executor.setCorePoolSize(target);
+            executor.setMaximumPoolSize(target);
+        }
+        logger.info("{} auto tuning: pool size {} -> {}", threadPoolName, size, target);
+    }
+
+    private void setQueueLimit(int target) {
+        target = Math.max(minQueueLimit, Math.min(queue.getCapacity(), target));
+        int limit = queue.getLimit();
+        if (target == limit) {
+            return ;
+        }
+        queue.setLimit(target);
+        logger.info("{} auto tuning: queue limit {} -> {}", threadPoolName, limit, target);
+    }
+}
@@ -0,0 +1,28 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阻塞提交线程直至队列有空位
+ */
+class BlockPolicy implements SaturationPolicy {
+
+    private final long timeout;
+
+    private final TimeUnit unit;
+
+    BlockPolicy(long timeout, TimeUnit unit) {
+        this.timeout = timeout;
+        this.unit = unit;
+    }
+
+    @Override
+    public boolean saturated(Runnable task, ThreadPoolExecutorWithMonitor pool) {
+        try {
+            return pool.offer(task, timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+/**
+ * 任务的执行线程
+ */
+public enum ExecutionMode {
+
+    /**
+     * 平台线程, 线程数在[poolSize, maxPoolSize]内
+     */
+    PLATFORM,
+
+    /**
+     * 虚拟线程(JDK 21+), 适合阻塞IO任务, 并发数上限为maxConcurrency, 不受平台线程内存限制
+     * 不支持虚拟线程的JDK上回退为{@link #PLATFORM}
+     */
+    VIRTUAL
+}
@@ -0,0 +1,58 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 先扩容后排队的有界队列
+ * ThreadPoolExecutor在入队失败时才创建非核心线程, 因此有空闲线程时正常入队,
+ * 没有空闲线程且线程数未达到最大值时拒绝入队, 由线程池创建新线程; 线程数已满后才排队
+ * 并发提交导致创建线程失败时, 由拒绝策略调用{@link #force(Runnable)}入队, 队列容量不变
+ */
+class GrowFirstQueue extends LimitedQueue {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 已提交未执行完的任务数, 与线程池共享, 不参与序列化
+     */
+    private final transient AtomicInteger submittedCount;
+
+    /**
+     * 不参与序列化, 反序列化后为null, 按普通有界队列入队
+     */
+    private transient volatile ThreadPoolExecutor executor;
+
+    GrowFirstQueue(int capacity, AtomicInteger submittedCount) {
+        super(capacity);
+        this.submittedCount = submittedCount;
+    }
+
+    void setExecutor(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        ThreadPoolExecutor executor = this.executor;
+        if (executor == null) {
+            return enqueue(task);
+        }
+        int poolSize = executor.getPoolSize();
+        //有空闲线程, 入队即可被立即取走
+        if (submittedCount.get() <= poolSize) {
+            return enqueue(task);
+        }
+        if (poolSize < executor.getMaximumPoolSize()) {
+            return false;
+        }
+        return enqueue(task);
+    }
+
+    /**
+     * 不再尝试扩容, 直接入队, 队列已满时返回false
+     */
+    boolean force(Runnable task) {
+        return enqueue(task);
+    }
+}
@@ -0,0 +1,81 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可在运行时调整有效容量的有界队列
+ * 数组容量在创建时固定为上限, 入队时按当前的limit判断是否已满
+ */
+class LimitedQueue extends ArrayBlockingQueue<Runnable> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 有效容量小于数组容量时, 等待空位的轮询间隔(ns)
+     */
+    private static final long POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+
+    private volatile int limit;
+
+    LimitedQueue(int capacity) {
+        super(capacity);
+        this.capacity = capacity;
+        this.limit = capacity;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 调整有效容量, 已在队列中的任务不受影响
+     */
+    void setLimit(int limit) {
+        if (limit <= 0 || limit > capacity) {
+            throw new IllegalArgumentException("limit必须在1到" + capacity + "之间");
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        return enqueue(task);
+    }
+
+    /**
+     * 有效容量内入队, 已满时返回false
+     */
+    boolean enqueue(Runnable task) {
+        if (size() >= limit) {
+            return false;
+        }
+        return super.offer(task);
+    }
+
+    /**
+     * 有效容量内入队, 已满时最多等待timeout
+     */
+    boolean enqueue(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for(; ;){
+            long remaining = deadline - System.nanoTime();
+            if (limit == capacity) {
+                return super.offer(task, remaining, TimeUnit.NANOSECONDS);
+            }
+            if (enqueue(task)) {
+                return true;
+            }
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.sleep(Math.min(remaining, POLL_INTERVAL));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程池饱和(线程数与队列均已满)时的处理策略
+ * 在提交任务的线程上执行, 阻塞提交线程即可向调用方传导背压
+ */
+public interface SaturationPolicy {
+
+    /**
+     * @param task 提交的任务
+     * @param pool 线程池
+     * @return 任务已被接收(入队、执行或转存)返回true, 返回false时任务被丢弃
+     */
+    boolean saturated(Runnable task, ThreadPoolExecutorWithMonitor pool);
+
+    /**
+     * 线程池初始化时调用
+     */
+    default void bind(ThreadPoolExecutorWithMonitor pool) {
+    }
+
+    /**
+     * 线程池关闭时调用
+     */
+    default void close() {
+    }
+
+    /**
+     * 记录日志后丢弃任务, 默认策略
+     */
+    static SaturationPolicy discard() {
+        return (task, pool) -> false;
+    }
+
+    /**
+     * 阻塞提交线程直至队列有空位, 超时后丢弃任务
+     */
+    static SaturationPolicy block(long timeout, TimeUnit unit) {
+        return new BlockPolicy(timeout, unit);
+    }
+
+    /**
+     * 在提交线程上直接执行任务, 提交线程执行期间无法继续提交
+     */
+    static SaturationPolicy callerRuns() {
+        return (task, pool) -> {
+            task.run();
+            return true;
+        };
+    }
+
+    /**
+     * 转存到本地磁盘队列, 线程池有空位时再取回执行, 详见{@link SpillPolicy}
+     * 目录中的文件会被反序列化为任务, 必须是本线程池专用的目录, 不能与其他进程或线程池共用,
+     * 也不能对其他用户可写(如/tmp下的公共目录), 否则写入其中的文件可能在取回时被执行
+     * @param directory 转存目录, 每个线程池使用独立目录
+     * @param allowedPackages 任务及其字段所属类的包名, 包括子包; 常用的JDK值类型无需配置
+     */
+    static SaturationPolicy spill(String directory, String... allowedPackages) {
+        return new SpillPolicy(directory, SpillQueue.DEFAULT_SEGMENT_SIZE, allowedPackages);
+    }
+
+    /**
+     * @param segmentSize 单个分段文件的大小(字节)
+     */
+    static SaturationPolicy spill(String directory, int segmentSize, String... allowedPackages) {
+        return new SpillPolicy(directory, segmentSize, allowedPackages);
+    }
+}
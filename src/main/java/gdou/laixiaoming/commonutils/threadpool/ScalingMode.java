@@ -0,0 +1,28 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+/**
+ * 线程池扩容方式
+ */
+public enum ScalingMode {
+
+    /**
+     * JDK默认行为: 核心线程已满时先入队, 队列满后才创建新线程, 适合CPU密集型任务
+     */
+    QUEUE_FIRST(0),
+
+    /**
+     * 核心线程已满时先创建新线程直至最大线程数, 之后才入队, 适合突发的IO密集型任务
+     * 非核心线程默认空闲60s后回收, 避免每次突发都重新创建线程
+     */
+    GROW_FIRST(60);
+
+    private final long defaultKeepAliveSeconds;
+
+    ScalingMode(long defaultKeepAliveSeconds) {
+        this.defaultKeepAliveSeconds = defaultKeepAliveSeconds;
+    }
+
+    long getDefaultKeepAliveSeconds() {
+        return defaultKeepAliveSeconds;
+    }
+}
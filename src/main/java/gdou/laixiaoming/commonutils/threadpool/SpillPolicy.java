@@ -0,0 +1,274 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import io.micrometer.core.instrument.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.invoke.SerializedLambda;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 溢出转存策略
+ * 线程池饱和时将任务序列化后追加到{@link SpillQueue}, 由后台线程在队列有空位时取回提交, 突发流量不占用堆内存也不丢任务
+ * (1)任务需实现{@link Serializable}(lambda可写作(Runnable & Serializable) () -> ...), 否则在提交线程上执行
+ * (2)转存的任务晚于后续直接入队的任务执行, 不保证提交顺序
+ * (3)任务交给线程池后才标记为已消费, 进程重启后继续执行未取回的任务, 此间崩溃可能重复执行
+ * (4)转存文件中的类只允许常用的JDK值类型及allowedPackages下的类, 读写时均按类名检查, 不在其中的任务不转存,
+ *    文件中出现的其他类拒绝加载, 以免被篡改的转存文件借反序列化执行任意代码
+ */
+class SpillPolicy implements SaturationPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillPolicy.class);
+
+    /**
+     * 取回任务时等待队列空位的时间(ms)
+     */
+    private static final long DRAIN_INTERVAL = 10;
+
+    /**
+     * 无需配置即可转存的JDK类型, lambda以{@link SerializedLambda}写入, 捕获的参数为Object数组
+     */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<>(Arrays.asList(
+            Object.class.getName(), String.class.getName(), Boolean.class.getName(), Character.class.getName(),
+            Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+            Float.class.getName(), Double.class.getName(), Number.class.getName(), Enum.class.getName(),
+            BigInteger.class.getName(), BigDecimal.class.getName(), SerializedLambda.class.getName(),
+            ArrayList.class.getName(), LinkedList.class.getName(), HashMap.class.getName(),
+            LinkedHashMap.class.getName(), HashSet.class.getName(), LinkedHashSet.class.getName()));
+
+    private final String directory;
+
+    private final int segmentSize;
+
+    /**
+     * 允许转存的包名前缀, 以'.'结尾
+     */
+    private final List<String> allowedPrefixes = new ArrayList<>();
+
+    private ThreadPoolExecutorWithMonitor pool;
+
+    private SpillQueue spillQueue;
+
+    private Thread drainer;
+
+    private volatile boolean closed;
+
+    SpillPolicy(String directory, int segmentSize, String... allowedPackages) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        for (String allowedPackage : allowedPackages) {
+            allowedPrefixes.add(allowedPackage.endsWith(".") ? allowedPackage : allowedPackage + ".");
+        }
+    }
+
+    @Override
+    public void bind(ThreadPoolExecutorWithMonitor pool) {
+        this.pool = pool;
+        try {
+            spillQueue = new SpillQueue(new File(directory), segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("无法打开转存目录" + directory, e);
+        }
+        Gauge.builder("threadpool.spilled", spillQueue, SpillQueue::pending)
+                .description("转存到磁盘等待执行的任务数")
+                .tag("name", pool.getThreadPoolName())
+                .register(pool.getMeterRegistry());
+        drainer = new Thread(this::drain, pool.getThreadPoolName() + " spill drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    @Override
+    public boolean saturated(Runnable task, ThreadPoolExecutorWithMonitor pool) {
+        if (closed) {
+            return false;
+        }
+        if (task instanceof Serializable) {
+            try {
+                if (spillQueue.append(serialize(task))) {
+                    LockSupport.unpark(drainer);
+                    return true;
+                }
+                logger.warn("{}的任务超过转存分段大小, 在提交线程上执行", pool.getThreadPoolName());
+            } catch (InvalidClassException e) {
+                logger.warn("{}的任务引用了不允许转存的类{}, 在提交线程上执行", pool.getThreadPoolName(), e.classname);
+            } catch (IOException e) {
+                logger.warn("{}的任务转存失败, 在提交线程上执行", pool.getThreadPoolName(), e);
+            }
+        }
+        task.run();
+        return true;
+    }
+
+    private void drain() {
+        while (!closed) {
+            byte[] data = spillQueue.peek();
+            if (data == null) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL));
+                continue;
+            }
+            Runnable task;
+            try {
+                task = deserialize(data);
+            } catch (Exception e) {
+                logger.error("{}的转存任务无法反序列化, 已跳过", pool.getThreadPoolName(), e);
+                spillQueue.commit();
+                continue;
+            }
+            try {
+                if (pool.offer(task, DRAIN_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    spillQueue.commit();
+                }
+            } catch (InterruptedException e) {
+                return ;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed || drainer == null) {
+            return ;
+        }
+        closed = true;
+        drainer.interrupt();
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        spillQueue.flush();
+    }
+
+    /**
+     * @throws InvalidClassException 任务引用了不允许转存的类
+     */
+    byte[] serialize(Runnable task) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (AllowListOutputStream out = new AllowListOutputStream(bytes)) {
+            try {
+                out.writeObject(task);
+            } catch (IOException e) {
+                //写入失败时ObjectOutputStream会尝试把异常本身写入流中并再次触发检查, 以最先拒绝的类为准
+                if (out.rejected != null) {
+                    throw new InvalidClassException(out.rejected, "不允许转存的类");
+                }
+                throw e;
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws InvalidClassException 转存文件中出现不允许的类, 该类不会被加载
+     */
+    Runnable deserialize(byte[] data) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new AllowListInputStream(new ByteArrayInputStream(data))) {
+            return (Runnable) in.readObject();
+        }
+    }
+
+    private boolean isAllowed(String className) {
+        //数组按元素类型检查, 基本类型数组直接放行
+        String name = className;
+        int dimensions = 0;
+        while (dimensions < name.length() && name.charAt(dimensions) == '[') {
+            dimensions++;
+        }
+        if (dimensions > 0) {
+            if (name.charAt(dimensions) != 'L') {
+                return true;
+            }
+            name = name.substring(dimensions + 1, name.length() - 1);
+        }
+        if (ALLOWED_CLASSES.contains(name)) {
+            return true;
+        }
+        for (String prefix : allowedPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 写入时检查对象图中的每个类, 保证写入的任务都能取回
+     */
+    private class AllowListOutputStream extends ObjectOutputStream {
+
+        /**
+         * 最先被拒绝的类
+         */
+        private String rejected;
+
+        private AllowListOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void annotateClass(Class<?> cl) throws IOException {
+            if (!isAllowed(cl.getName())) {
+                reject(cl.getName());
+            }
+        }
+
+        @Override
+        protected void annotateProxyClass(Class<?> cl) throws IOException {
+            reject(cl.getName());
+        }
+
+        private void reject(String className) throws IOException {
+            if (rejected == null) {
+                rejected = className;
+            }
+            throw new InvalidClassException(className, "不允许转存的类");
+        }
+    }
+
+    /**
+     * 按类名检查后才加载类, 不依赖JDK 9的ObjectInputFilter
+     */
+    private class AllowListInputStream extends ObjectInputStream {
+
+        private AllowListInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "不允许转存的类");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException(Arrays.toString(interfaces), "不允许转存动态代理");
+        }
+    }
+}
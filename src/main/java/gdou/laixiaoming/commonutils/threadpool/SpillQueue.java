@@ -0,0 +1,285 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * 基于内存映射分段文件的追加写队列, 单读者
+ * 每个分段为固定大小的文件, 记录格式为 长度(int) + 内容, 写满后追加结束标记并滚动到新分段, 读完的分段直接删除
+ * 长度字段: 正数为未消费的记录, 负数为已消费的记录(取反即长度), 0为未写入, {@link #END}为分段结束
+ * 消费后将长度取反, 进程重启时跳过已消费的记录, 从第一条未消费的记录继续读取
+ * 写入只修改映射内存, 由操作系统刷盘, 进程崩溃不丢数据, 机器掉电可能丢失最近的写入
+ * 读完的分段先解除映射再删除, 否则映射在GC前一直占用虚拟内存和磁盘空间
+ */
+class SpillQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpillQueue.class);
+
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SUFFIX = ".spill";
+
+    private static final int END = Integer.MIN_VALUE;
+
+    private static final int HEADER_SIZE = 4;
+
+    /**
+     * 解除映射的方法, 不支持时为null
+     */
+    private static final Unmapper UNMAPPER = unmapper();
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    /**
+     * 首个为读分段, 末尾未封闭的为写分段
+     */
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private long nextSequence;
+
+    /**
+     * 未消费的记录数
+     */
+    private long pending;
+
+    SpillQueue(File directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("segmentSize过小: " + segmentSize);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建目录" + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        recover();
+    }
+
+    /**
+     * 加载上次未读完的分段, 这些分段不再写入
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return ;
+        }
+        long[] sequences = Arrays.stream(files)
+                .mapToLong(file -> Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length())))
+                .sorted()
+                .toArray();
+        for (long sequence : sequences) {
+            Segment segment = new Segment(sequence, map(fileOf(sequence)));
+            segment.sealed = true;
+            int position = 0;
+            boolean skipping = true;
+            while (position + HEADER_SIZE <= segment.buffer.capacity()) {
+                int length = segment.buffer.getInt(position);
+                if (length == 0 || length == END) {
+                    break;
+                }
+                if (length > 0) {
+                    skipping = false;
+                    pending++;
+                }
+                position += HEADER_SIZE + Math.abs(length);
+                if (skipping) {
+                    segment.readPosition = position;
+                }
+            }
+            segments.addLast(segment);
+            nextSequence = sequence + 1;
+        }
+        if (pending > 0) {
+            logger.info("从{}恢复{}个转存的任务", directory, pending);
+        }
+    }
+
+    /**
+     * @return 记录超过分段大小时返回false
+     */
+    synchronized boolean append(byte[] data) throws IOException {
+        if (HEADER_SIZE + data.length + HEADER_SIZE > segmentSize) {
+            return false;
+        }
+        Segment segment = segments.peekLast();
+        if (segment == null || segment.sealed) {
+            segment = newSegment();
+        } else if (segment.writePosition + HEADER_SIZE + data.length + HEADER_SIZE > segmentSize) {
+            segment.buffer.putInt(segment.writePosition, END);
+            segment.sealed = true;
+            segment = newSegment();
+        }
+        int position = segment.writePosition;
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(data);
+        //长度最后写入, 重启恢复时不会读到不完整的记录
+        segment.buffer.putInt(position, data.length);
+        segment.writePosition = position + HEADER_SIZE + data.length;
+        pending++;
+        return true;
+    }
+
+    /**
+     * 读取队首记录, 不移除
+     * @return 队列为空时返回null
+     */
+    synchronized byte[] peek() {
+        for(; ;){
+            Segment segment = segments.peekFirst();
+            if (segment == null) {
+                return null;
+            }
+            int position = segment.readPosition;
+            int length = position + HEADER_SIZE <= segmentSize ? segment.buffer.getInt(position) : END;
+            if (length > 0) {
+                byte[] data = new byte[length];
+                ByteBuffer buffer = segment.buffer.duplicate();
+                buffer.position(position + HEADER_SIZE);
+                buffer.get(data);
+                return data;
+            }
+            if (length < 0 && length != END) {
+                segment.readPosition = position + HEADER_SIZE - length;
+                continue;
+            }
+            if (!segment.sealed) {
+                //写分段中暂无新记录
+                return null;
+            }
+            segments.pollFirst();
+            //已移出队列, 之后不会再访问该映射
+            unmap(segment.buffer);
+            if (!fileOf(segment.sequence).delete()) {
+                logger.warn("删除转存文件{}失败", fileOf(segment.sequence));
+            }
+        }
+    }
+
+    /**
+     * 标记队首记录已消费
+     */
+    synchronized void commit() {
+        Segment segment = segments.peekFirst();
+        if (segment == null) {
+            return ;
+        }
+        int position = segment.readPosition;
+        int length = segment.buffer.getInt(position);
+        if (length <= 0) {
+            return ;
+        }
+        segment.buffer.putInt(position, -length);
+        segment.readPosition = position + HEADER_SIZE + length;
+        pending--;
+    }
+
+    synchronized long pending() {
+        return pending;
+    }
+
+    synchronized void flush() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        long sequence = nextSequence++;
+        Segment segment = new Segment(sequence, map(fileOf(sequence)));
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(segmentSize);
+            //关闭文件后映射仍然有效
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private File fileOf(long sequence) {
+        return new File(directory, String.format("%020d%s", sequence, SUFFIX));
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER == null) {
+            return ;
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+        } catch (Exception e) {
+            logger.warn("解除转存文件映射失败, 等待GC回收", e);
+        }
+    }
+
+    /**
+     * JDK 9+使用Unsafe.invokeCleaner, JDK 8使用DirectByteBuffer.cleaner().clean(), 均通过反射调用以便在JDK 8上编译
+     */
+    private static Unmapper unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                Object unsafe = theUnsafe.get(null);
+                return buffer -> invokeCleaner.invoke(unsafe, buffer);
+            } catch (NoSuchMethodException e) {
+                //JDK 8
+                Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+                cleaner.setAccessible(true);
+                Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                return buffer -> {
+                    Object c = cleaner.invoke(buffer);
+                    if (c != null) {
+                        clean.invoke(c);
+                    }
+                };
+            }
+        } catch (Exception e) {
+            logger.warn("当前JDK不支持解除文件映射, 读完的转存文件在GC后才释放", e);
+            return null;
+        }
+    }
+
+    private interface Unmapper {
+
+        void unmap(MappedByteBuffer buffer) throws Exception;
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+
+        private final MappedByteBuffer buffer;
+
+        private int readPosition;
+
+        private int writePosition;
+
+        /**
+         * 已写满或为恢复的分段, 不再写入
+         */
+        private boolean sealed;
+
+        Segment(long sequence, MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+}
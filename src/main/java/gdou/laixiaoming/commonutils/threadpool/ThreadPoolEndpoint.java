@@ -0,0 +1,72 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 线程池管理, 访问/actuator/threadpools
+ * 查看容器中所有{@link ThreadPoolExecutorWithMonitor}的状态, 按名称在运行时调整线程数、队列上限及自动调优开关
+ */
+@Component
+@Endpoint(id = "threadpools")
+public class ThreadPoolEndpoint {
+
+    private ObjectProvider<ThreadPoolExecutorWithMonitor> threadPools;
+
+    @Autowired
+    public ThreadPoolEndpoint(ObjectProvider<ThreadPoolExecutorWithMonitor> threadPools) {
+        this.threadPools = threadPools;
+    }
+
+    @ReadOperation
+    public List<ThreadPoolStatus> threadPools() {
+        return threadPools.orderedStream()
+                .map(ThreadPoolExecutorWithMonitor::status)
+                .collect(Collectors.toList());
+    }
+
+    @ReadOperation
+    public ThreadPoolStatus threadPool(@Selector String name) {
+        ThreadPoolExecutorWithMonitor threadPool = find(name);
+        return threadPool == null ? null : threadPool.status();
+    }
+
+    /**
+     * 未传的参数保持不变
+     */
+    @WriteOperation
+    public ThreadPoolStatus update(@Selector String name, @Nullable Integer corePoolSize,
+                                   @Nullable Integer maximumPoolSize, @Nullable Integer queueLimit,
+                                   @Nullable Boolean autoTuning) {
+        ThreadPoolExecutorWithMonitor threadPool = find(name);
+        if (threadPool == null) {
+            return null;
+        }
+        ThreadPoolStatus status = threadPool.status();
+        threadPool.resize(corePoolSize != null ? corePoolSize : status.getCorePoolSize(),
+                maximumPoolSize != null ? maximumPoolSize : status.getMaximumPoolSize());
+        if (queueLimit != null) {
+            threadPool.setQueueLimit(queueLimit);
+        }
+        if (autoTuning != null) {
+            threadPool.setAutoTuning(autoTuning);
+        }
+        return threadPool.status();
+    }
+
+    private ThreadPoolExecutorWithMonitor find(String name) {
+        return threadPools.orderedStream()
+                .filter(threadPool -> threadPool.getThreadPoolName().equals(name))
+                .findFirst()
+                .orElse(null);
+    }
+}
@@ -1,11 +1,14 @@
 package gdou.laixiaoming.commonutils.threadpool;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ThreadPoolExecutorWithMonitor
         implements AutoCloseable, InitializingBean {
@@ -18,12 +21,31 @@ public class ThreadPoolExecutorWithMonitor
     private static final int DEFAULT_MAX_POOL_SIZE = 200;
     private static final long DEFAULT_REFRESH_PERIOD = 10;
     private static final String DEFAULT_THREAD_POOL_NAME = "async thread pool executor";
+    private static final long DEFAULT_TUNING_PERIOD = 5;
+    private static final long DEFAULT_TARGET_QUEUE_WAIT = 100;
+    private static final int DEFAULT_MAX_CONCURRENCY = 10000;
 
     private int queueSize = DEFAULT_QUEUE_SIZE;
     private int poolSize = DEFAULT_POOL_SIZE;
     private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
     private String threadPoolName = DEFAULT_THREAD_POOL_NAME;
     private long refreshPeriodMinutes = DEFAULT_REFRESH_PERIOD;
+    private MeterRegistry meterRegistry = Metrics.globalRegistry;
+    private ScalingMode scalingMode = ScalingMode.QUEUE_FIRST;
+    private long keepAliveSeconds = ScalingMode.QUEUE_FIRST.getDefaultKeepAliveSeconds();
+    private boolean autoTuning;
+    private long tuningPeriodSeconds = DEFAULT_TUNING_PERIOD;
+    private long targetQueueWaitMillis = DEFAULT_TARGET_QUEUE_WAIT;
+    private SaturationPolicy saturationPolicy = SaturationPolicy.discard();
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+    private ThreadPoolMetrics metrics;
+
+    /**
+     * 已提交未执行完的任务数, 用于{@link ScalingMode#GROW_FIRST}判断是否有空闲线程
+     */
+    private final AtomicInteger submittedCount = new AtomicInteger();
 
     /**
      * 用于周期性监控线程池的运行状态
@@ -33,18 +55,76 @@ public class ThreadPoolExecutorWithMonitor
     /**
      * 自定义异步线程池
      *(1)任务队列使用有界队列
-     *(2)自定义拒绝策略
+     *(2)饱和时按{@link SaturationPolicy}处理, 默认丢弃
      */
     private ThreadPoolExecutor threadPoolExecutor;
 
+    private LimitedQueue queue;
+
+    /**
+     * 自动调优, 在监控线程上执行
+     */
+    private AdaptiveTuner tuner;
+
     private void initThreadPool() {
+        LimitedQueue queue = scalingMode == ScalingMode.GROW_FIRST
+                ? new GrowFirstQueue(queueSize, submittedCount)
+                : new LimitedQueue(queueSize);
+        this.queue = queue;
+        int corePoolSize = poolSize;
+        int maximumPoolSize = maxPoolSize;
+        long keepAlive = keepAliveSeconds;
+        ThreadFactory threadFactory;
+        boolean virtual = executionMode == ExecutionMode.VIRTUAL && VirtualThreads.isSupported();
+        if (virtual) {
+            //线程数上限即并发数上限, 相当于信号量; 虚拟线程创建开销小, 空闲后很快回收
+            corePoolSize = maxConcurrency;
+            maximumPoolSize = maxConcurrency;
+            keepAlive = Math.max(keepAliveSeconds, 1);
+            threadFactory = VirtualThreads.factory("async-virtual-thread-");
+        } else {
+            if (executionMode == ExecutionMode.VIRTUAL) {
+                logger.warn("{}: 当前JDK不支持虚拟线程, 使用平台线程", threadPoolName);
+            }
+            threadFactory = new BasicThreadFactory.Builder().namingPattern("async-thread-%d").build();
+        }
         threadPoolExecutor = new ThreadPoolExecutor(
-                poolSize,
-                maxPoolSize,
-                0, TimeUnit.MILLISECONDS,
-                new ArrayBlockingQueue(queueSize),
-                new BasicThreadFactory.Builder().namingPattern("async-thread-%d").build(),
-                (r, executor) -> logger.error("{} is full! ! ", threadPoolName));
+                corePoolSize,
+                //自动调优从核心线程数开始, 在[corePoolSize, maximumPoolSize]内调整
+                autoTuning ? corePoolSize : maximumPoolSize,
+                keepAlive, TimeUnit.SECONDS,
+                queue,
+                threadFactory,
+                (r, executor) -> {
+                    //线程数已满但队列仍有空间
+                    if (queue instanceof GrowFirstQueue && !executor.isShutdown()
+                            && ((GrowFirstQueue) queue).force(r)) {
+                        return ;
+                    }
+                    //未进入线程池, 由饱和策略接收的任务另行计数
+                    submittedCount.decrementAndGet();
+                    if (!executor.isShutdown() && saturationPolicy.saturated(metrics.unwrap(r), this)) {
+                        return ;
+                    }
+                    metrics.rejected();
+                    logger.error("{} is full! ! ", threadPoolName);
+                }) {
+            @Override
+            protected void afterExecute(Runnable r, Throwable t) {
+                submittedCount.decrementAndGet();
+            }
+        };
+        if (virtual) {
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+        }
+        if (queue instanceof GrowFirstQueue) {
+            ((GrowFirstQueue) queue).setExecutor(threadPoolExecutor);
+        }
+        metrics.bind(threadPoolName, threadPoolExecutor, meterRegistry);
+        tuner = new AdaptiveTuner(threadPoolName, threadPoolExecutor, queue, metrics,
+                corePoolSize, maximumPoolSize, TimeUnit.MILLISECONDS.toNanos(targetQueueWaitMillis), tuningPeriodSeconds);
+        tuner.setEnabled(autoTuning);
+        saturationPolicy.bind(this);
     }
 
     private void initMonitor() {
@@ -73,23 +153,108 @@ public class ThreadPoolExecutorWithMonitor
              * 线程池里活跃的线程数量
              */
             long activeCount = threadPoolExecutor.getActiveCount();
+            /**
+             * 排队中的任务数
+             */
+            long queueSize = threadPoolExecutor.getQueue().size();
 
-            logger.info("{} monitor>>>>\ntaskCount:{}, completedTaskCount:{}, largestPoolSize:{}, poolSize:{}, activeCount:{} \n<<<<",
-                    threadPoolName, taskCount, completedTaskCount, largestPoolSize, poolSize,activeCount);
-        }, 0, refreshPeriodMinutes, TimeUnit.SECONDS);
+            logger.info("{} monitor>>>>\ntaskCount:{}, completedTaskCount:{}, largestPoolSize:{}, poolSize:{}, activeCount:{}, queueSize:{} \n<<<<",
+                    threadPoolName, taskCount, completedTaskCount, largestPoolSize, poolSize, activeCount, queueSize);
+        }, 0, refreshPeriodMinutes, TimeUnit.MINUTES);
+        scheduledExecutorService.scheduleAtFixedRate(tuner, tuningPeriodSeconds, tuningPeriodSeconds, TimeUnit.SECONDS);
     }
 
     public void execute(Runnable task) {
-        threadPoolExecutor.execute(task);
+        submittedCount.incrementAndGet();
+        threadPoolExecutor.execute(metrics.wrap(task));
+    }
+
+    /**
+     * 线程池饱和时由{@link SaturationPolicy}调用, 在队列有效容量内入队, 不再触发饱和策略
+     * @return 队列已满或线程池已关闭时返回false, 任务未被接收
+     */
+    boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        if (threadPoolExecutor.isShutdown()) {
+            return false;
+        }
+        submittedCount.incrementAndGet();
+        Runnable wrapped = metrics.wrap(task);
+        if (queue.enqueue(wrapped, timeout, unit)) {
+            //等待入队期间线程池已关闭, 任务可能不再被执行, 移除成功则视为未接收
+            if (threadPoolExecutor.isShutdown() && queue.remove(wrapped)) {
+                submittedCount.decrementAndGet();
+                return false;
+            }
+            //绕过execute直接入队, 需保证有线程消费(如重启后取回转存任务时尚未创建线程)
+            threadPoolExecutor.prestartCoreThread();
+            return true;
+        }
+        submittedCount.decrementAndGet();
+        return false;
+    }
+
+    public String getThreadPoolName() {
+        return threadPoolName;
+    }
+
+    MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * 运行时调整线程数, 开启自动调优时调优会在此基础上继续调整
+     * 与自动调优使用同一把锁(调优器自身), 避免二者交错设置核心线程数与最大线程数
+     */
+    public void resize(int corePoolSize, int maximumPoolSize) {
+        if (corePoolSize < 0 || maximumPoolSize <= 0 || corePoolSize > maximumPoolSize) {
+            throw new IllegalArgumentException("线程数设置错误: core=" + corePoolSize + ", max=" + maximumPoolSize);
+        }
+        synchronized (tuner) {
+            //先放宽再收紧, 保证过程中核心线程数不超过最大线程数
+            if (maximumPoolSize >= threadPoolExecutor.getMaximumPoolSize()) {
+                threadPoolExecutor.setMaximumPoolSize(maximumPoolSize);
+                threadPoolExecutor.setCorePoolSize(corePoolSize);
+            } else {
+                threadPoolExecutor.setCorePoolSize(corePoolSize);
+                threadPoolExecutor.setMaximumPoolSize(maximumPoolSize);
+            }
+        }
+    }
+
+    /**
+     * 运行时调整队列的有效容量, 不能超过创建时的queueSize
+     */
+    public void setQueueLimit(int queueLimit) {
+        queue.setLimit(queueLimit);
+    }
+
+    public void setAutoTuning(boolean autoTuning) {
+        tuner.setEnabled(autoTuning);
+    }
+
+    public ThreadPoolStatus status() {
+        return new ThreadPoolStatus(threadPoolName,
+                threadPoolExecutor.getCorePoolSize(),
+                threadPoolExecutor.getMaximumPoolSize(),
+                threadPoolExecutor.getPoolSize(),
+                threadPoolExecutor.getActiveCount(),
+                queue.size(),
+                queue.getLimit(),
+                tuner.isEnabled());
     }
 
     @Override
     public void close() throws Exception {
+        //监控与调优线程为非守护线程, 不停止会阻止JVM退出
+        scheduledExecutorService.shutdownNow();
+        //先停止饱和策略(如转存的取回线程), 不再向关闭中的线程池提交, 未取回的转存任务保留到下次启动
+        saturationPolicy.close();
         threadPoolExecutor.shutdown();
     }
 
     @Override
     public void afterPropertiesSet() throws Exception {
+        metrics = new ThreadPoolMetrics(threadPoolName, meterRegistry);
         initThreadPool();
         initMonitor();
     }
@@ -104,6 +269,15 @@ public class ThreadPoolExecutorWithMonitor
         private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
         private String threadPoolName = DEFAULT_THREAD_POOL_NAME;
         private long refreshPeriodMinutes = DEFAULT_REFRESH_PERIOD;
+        private MeterRegistry meterRegistry = Metrics.globalRegistry;
+        private ScalingMode scalingMode = ScalingMode.QUEUE_FIRST;
+        private Long keepAliveSeconds;
+        private boolean autoTuning;
+        private long tuningPeriodSeconds = DEFAULT_TUNING_PERIOD;
+        private long targetQueueWaitMillis = DEFAULT_TARGET_QUEUE_WAIT;
+        private SaturationPolicy saturationPolicy = SaturationPolicy.discard();
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+        private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
 
         private ThreadPoolExecutorWithMonitorBuilder() {
         }
@@ -137,6 +311,75 @@ public class ThreadPoolExecutorWithMonitor
             return this;
         }
 
+        /**
+         * 监控指标的注册中心, 默认为全局注册中心(Spring Boot会将自动配置的注册中心加入其中)
+         */
+        public ThreadPoolExecutorWithMonitorBuilder meterRegistry(MeterRegistry meterRegistry) {
+            this.meterRegistry = meterRegistry;
+            return this;
+        }
+
+        /**
+         * 扩容方式, 默认{@link ScalingMode#QUEUE_FIRST}
+         */
+        public ThreadPoolExecutorWithMonitorBuilder scalingMode(ScalingMode scalingMode) {
+            this.scalingMode = scalingMode;
+            return this;
+        }
+
+        /**
+         * 非核心线程的空闲存活时间, 未设置时使用扩容方式的默认值
+         */
+        public ThreadPoolExecutorWithMonitorBuilder keepAliveSeconds(long keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+            return this;
+        }
+
+        /**
+         * 开启自动调优, 线程数在[poolSize, maxPoolSize]内调整, 队列有效容量不超过queueSize
+         */
+        public ThreadPoolExecutorWithMonitorBuilder autoTuning(boolean autoTuning) {
+            this.autoTuning = autoTuning;
+            return this;
+        }
+
+        public ThreadPoolExecutorWithMonitorBuilder tuningPeriodSeconds(long tuningPeriodSeconds) {
+            this.tuningPeriodSeconds = tuningPeriodSeconds;
+            return this;
+        }
+
+        /**
+         * 自动调优的目标平均排队耗时, 超过时视为拥塞
+         */
+        public ThreadPoolExecutorWithMonitorBuilder targetQueueWaitMillis(long targetQueueWaitMillis) {
+            this.targetQueueWaitMillis = targetQueueWaitMillis;
+            return this;
+        }
+
+        /**
+         * 线程池饱和时的处理策略, 默认丢弃, 每个线程池使用独立的策略实例
+         */
+        public ThreadPoolExecutorWithMonitorBuilder saturationPolicy(SaturationPolicy saturationPolicy) {
+            this.saturationPolicy = saturationPolicy;
+            return this;
+        }
+
+        /**
+         * 执行线程, 默认平台线程; {@link ExecutionMode#VIRTUAL}下poolSize/maxPoolSize不生效, 并发数由maxConcurrency限制
+         */
+        public ThreadPoolExecutorWithMonitorBuilder executionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        /**
+         * 虚拟线程模式下同时执行的任务数上限
+         */
+        public ThreadPoolExecutorWithMonitorBuilder maxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
         public ThreadPoolExecutorWithMonitor build() {
             ThreadPoolExecutorWithMonitor threadPoolExecutorWithMonitor = new ThreadPoolExecutorWithMonitor();
             threadPoolExecutorWithMonitor.queueSize = this.queueSize;
@@ -144,6 +387,16 @@ public class ThreadPoolExecutorWithMonitor
             threadPoolExecutorWithMonitor.maxPoolSize = this.maxPoolSize;
             threadPoolExecutorWithMonitor.threadPoolName = this.threadPoolName;
             threadPoolExecutorWithMonitor.refreshPeriodMinutes = this.refreshPeriodMinutes;
+            threadPoolExecutorWithMonitor.meterRegistry = this.meterRegistry;
+            threadPoolExecutorWithMonitor.scalingMode = this.scalingMode;
+            threadPoolExecutorWithMonitor.keepAliveSeconds = this.keepAliveSeconds != null
+                    ? this.keepAliveSeconds : this.scalingMode.getDefaultKeepAliveSeconds();
+            threadPoolExecutorWithMonitor.autoTuning = this.autoTuning;
+            threadPoolExecutorWithMonitor.tuningPeriodSeconds = this.tuningPeriodSeconds;
+            threadPoolExecutorWithMonitor.targetQueueWaitMillis = this.targetQueueWaitMillis;
+            threadPoolExecutorWithMonitor.saturationPolicy = this.saturationPolicy;
+            threadPoolExecutorWithMonitor.executionMode = this.executionMode;
+            threadPoolExecutorWithMonitor.maxConcurrency = this.maxConcurrency;
             return threadPoolExecutorWithMonitor;
         }
     }
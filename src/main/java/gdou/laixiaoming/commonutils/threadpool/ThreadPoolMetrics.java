@@ -0,0 +1,128 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线程池监控指标, 以name标签区分线程池
+ * 任务排队耗时、执行耗时以直方图发布, 可按分位数评估线程数和队列长度
+ */
+class ThreadPoolMetrics {
+
+    private final Timer queueWaitTimer;
+    private final Timer executionTimer;
+    private final Counter rejectedCounter;
+
+    /**
+     * 累计排队耗时, 供自动调优计算区间均值, 不依赖注册中心是否保留数据
+     */
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder queueWaitCount = new LongAdder();
+
+    ThreadPoolMetrics(String threadPoolName, MeterRegistry registry) {
+        this.queueWaitTimer = Timer.builder("threadpool.queue.wait")
+                .description("任务从提交到开始执行的等待耗时")
+                .tag("name", threadPoolName)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(1))
+                .register(registry);
+        this.executionTimer = Timer.builder("threadpool.execution")
+                .description("任务的执行耗时")
+                .tag("name", threadPoolName)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(10))
+                .register(registry);
+        this.rejectedCounter = Counter.builder("threadpool.rejected")
+                .description("线程池已满被拒绝的任务数")
+                .tag("name", threadPoolName)
+                .register(registry);
+    }
+
+    /**
+     * 线程池状态的瞬时值, 采集时读取
+     */
+    void bind(String threadPoolName, ThreadPoolExecutor executor, MeterRegistry registry) {
+        Gauge.builder("threadpool.queue.size", executor, e -> e.getQueue().size())
+                .description("排队中的任务数")
+                .tag("name", threadPoolName)
+                .register(registry);
+        Gauge.builder("threadpool.queue.remaining", executor, e -> e.getQueue().remainingCapacity())
+                .description("队列剩余容量")
+                .tag("name", threadPoolName)
+                .register(registry);
+        Gauge.builder("threadpool.pool.size", executor, ThreadPoolExecutor::getPoolSize)
+                .description("线程池里的线程数量")
+                .tag("name", threadPoolName)
+                .register(registry);
+        Gauge.builder("threadpool.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("执行任务中的线程数量")
+                .tag("name", threadPoolName)
+                .register(registry);
+        Gauge.builder("threadpool.utilization", executor,
+                e -> (double) e.getActiveCount() / e.getMaximumPoolSize())
+                .description("活跃线程数占最大线程数的比例")
+                .tag("name", threadPoolName)
+                .register(registry);
+    }
+
+    /**
+     * 包装任务, 记录排队及执行耗时
+     */
+    Runnable wrap(Runnable task) {
+        return new TimedTask(task, System.nanoTime());
+    }
+
+    /**
+     * 取出{@link #wrap(Runnable)}包装前的任务
+     */
+    Runnable unwrap(Runnable task) {
+        return task instanceof TimedTask ? ((TimedTask) task).task : task;
+    }
+
+    void rejected() {
+        rejectedCounter.increment();
+    }
+
+    long queueWaitNanos() {
+        return queueWaitNanos.sum();
+    }
+
+    long queueWaitCount() {
+        return queueWaitCount.sum();
+    }
+
+    private class TimedTask implements Runnable {
+
+        private final Runnable task;
+
+        private final long submitNanos;
+
+        TimedTask(Runnable task, long submitNanos) {
+            this.task = task;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            long waitNanos = startNanos - submitNanos;
+            queueWaitTimer.record(waitNanos, TimeUnit.NANOSECONDS);
+            queueWaitNanos.add(waitNanos);
+            queueWaitCount.increment();
+            try {
+                task.run();
+            } finally {
+                executionTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+}
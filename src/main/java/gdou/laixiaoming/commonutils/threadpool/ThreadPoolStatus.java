@@ -0,0 +1,70 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+/**
+ * 线程池当前配置及运行状态
+ */
+public class ThreadPoolStatus {
+
+    private final String threadPoolName;
+
+    private final int corePoolSize;
+
+    private final int maximumPoolSize;
+
+    private final int poolSize;
+
+    private final int activeCount;
+
+    private final int queueSize;
+
+    /**
+     * 队列的有效容量
+     */
+    private final int queueLimit;
+
+    private final boolean autoTuning;
+
+    ThreadPoolStatus(String threadPoolName, int corePoolSize, int maximumPoolSize, int poolSize,
+                     int activeCount, int queueSize, int queueLimit, boolean autoTuning) {
+        this.threadPoolName = threadPoolName;
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.queueLimit = queueLimit;
+        this.autoTuning = autoTuning;
+    }
+
+    public String getThreadPoolName() {
+        return threadPoolName;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    public boolean isAutoTuning() {
+        return autoTuning;
+    }
+}
@@ -0,0 +1,24 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持, JDK 8版本不支持
+ * JDK 21+的实现位于src/main/java21, 打包为多版本jar的META-INF/versions/21
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * @param prefix 线程名前缀, 后接递增序号
+     */
+    static ThreadFactory factory(String prefix) {
+        throw new UnsupportedOperationException("当前JDK不支持虚拟线程");
+    }
+}
@@ -0,0 +1,23 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持, JDK 21+版本
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * @param prefix 线程名前缀, 后接递增序号
+     */
+    static ThreadFactory factory(String prefix) {
+        return Thread.ofVirtual().name(prefix, 0).factory();
+    }
+}
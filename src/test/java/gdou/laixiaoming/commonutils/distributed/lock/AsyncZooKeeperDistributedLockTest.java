@@ -0,0 +1,96 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import gdou.laixiaoming.commonutils.distributed.ZooKeeperConnection;
+import org.apache.zookeeper.server.NIOServerCnxn;
+import org.apache.zookeeper.server.ZooKeeperServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncZooKeeperDistributedLockTest {
+
+    private static final String ROOT = "/locks";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private NIOServerCnxn.Factory factory;
+
+    private ZooKeeperConnection connection;
+
+    private AsyncZooKeeperDistributedLock asyncLock;
+
+    @Before
+    public void setUp() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        File dir = folder.getRoot();
+        factory = new NIOServerCnxn.Factory(new InetSocketAddress("127.0.0.1", port));
+        factory.startup(new ZooKeeperServer(dir, dir, 2000));
+        connection = new ZooKeeperConnection("127.0.0.1:" + port, 5000);
+        assertTrue(connection.awaitConnected(5000));
+        asyncLock = new AsyncZooKeeperDistributedLock(connection.getZooKeeper(), ROOT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        asyncLock.close();
+        connection.close();
+        factory.shutdown();
+    }
+
+    @Test
+    public void lockAsyncAfterParentDeletedBySyncUnlock() throws Exception {
+        assertTrue(asyncLock.tryLockAsync("k", "v", 10).get(5, TimeUnit.SECONDS));
+        assertTrue(asyncLock.unlockAsync("k").get(5, TimeUnit.SECONDS));
+
+        ZooKeeperDistributedLock syncLock = new ZooKeeperDistributedLock(connection.getZooKeeper(), ROOT, "k");
+        assertTrue(syncLock.tryLock());
+        syncLock.unlock();
+        assertParentDeleted("k");
+
+        assertTrue(asyncLock.tryLockAsync("k", "v", 10).get(5, TimeUnit.SECONDS));
+        assertTrue(asyncLock.unlockAsync("k").get(5, TimeUnit.SECONDS));
+        assertParentDeleted("k");
+        assertTrue(asyncLock.lockAsync("k", "v", 10, 5).get(5, TimeUnit.SECONDS));
+        assertTrue(asyncLock.unlockAsync("k").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void lockAsyncWaitsForSyncHolder() throws Exception {
+        ZooKeeperDistributedLock syncLock = new ZooKeeperDistributedLock(connection.getZooKeeper(), ROOT, "k");
+        assertTrue(syncLock.tryLock());
+        assertFalse(asyncLock.tryLockAsync("k", "v", 10).get(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> waiting = asyncLock.lockAsync("k", "v", 10, 5);
+        assertFalse(waiting.isDone());
+
+        //释放时有等待者, 父节点保留
+        syncLock.unlock();
+        assertTrue(waiting.get(5, TimeUnit.SECONDS));
+        assertNotNull(connection.getZooKeeper().exists(ROOT + "/k", false));
+        assertTrue(asyncLock.unlockAsync("k").get(5, TimeUnit.SECONDS));
+        assertParentDeleted("k");
+    }
+
+    /**
+     * 删除为异步发送, 以同一会话的同步请求等待其处理完成
+     */
+    private void assertParentDeleted(String lockKey) throws Exception {
+        assertNull(connection.getZooKeeper().exists(ROOT + "/" + lockKey, false));
+    }
+}
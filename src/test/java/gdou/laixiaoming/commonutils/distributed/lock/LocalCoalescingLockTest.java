@@ -0,0 +1,209 @@
+package gdou.laixiaoming.commonutils.distributed.lock;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalCoalescingLockTest {
+
+    @Test
+    public void reentryBypassesLocalQueue() throws Exception {
+        InMemoryReentrantLock delegate = new InMemoryReentrantLock();
+        LocalCoalescingLock lock = new LocalCoalescingLock(delegate);
+        assertTrue(lock.tryLock("k", "a", 10));
+
+        //队首线程持有本地锁等待a释放
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lock.lock("k", "b", 10, 5);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        delegate.awaitWaiters("k", 1);
+
+        assertTrue(lock.lock("k", "a", 10, 1));
+        lock.lock("k", "a", 10);
+        assertTrue(lock.tryLock(Arrays.asList("k", "other"), "a", 10));
+        assertEquals(4, delegate.holdCount("k"));
+
+        assertTrue(lock.unlock(Arrays.asList("k", "other")));
+        assertTrue(lock.unlock("k"));
+        assertTrue(lock.unlock("k"));
+        assertFalse(waiter.isDone());
+        assertTrue(lock.unlock("k"));
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(lock.unlock("k"));
+    }
+
+    @Test
+    public void timeoutDoesNotOvershootDeadline() throws Exception {
+        InMemoryReentrantLock delegate = new InMemoryReentrantLock();
+        LocalCoalescingLock lock = new LocalCoalescingLock(delegate);
+        assertTrue(lock.tryLock("k", "a", 10));
+
+        //未在本地排队时超时时间原样传递
+        assertFalse(lock.lock("k", "b", 10, 1));
+        assertEquals(Arrays.asList(1), delegate.timeouts);
+
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lock.lock("k", "c", 10, 2);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        delegate.awaitWaiters("k", 1);
+        Thread.sleep(500);
+        long start = System.currentTimeMillis();
+        //本地排队约1.5秒后剩余约1.5秒, 向下取整为1秒, 不超过截止时间
+        assertFalse(lock.lock("k", "b", 10, 3));
+        assertTrue(System.currentTimeMillis() - start < 3000);
+        assertFalse(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 1), delegate.timeouts);
+
+        //本地排队后已无剩余时间则直接失败
+        waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return lock.lock("k", "c", 10, 2);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        delegate.awaitWaiters("k", 1);
+        assertFalse(lock.lock("k", "b", 10, 1));
+        assertFalse(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2, 1, 2), delegate.timeouts);
+    }
+
+    /**
+     * 以val标识持有者的内存可重入锁, 行为与{@link ReentrantRedisLock}一致
+     */
+    private static class InMemoryReentrantLock implements DistributedLock {
+
+        private final Map<String, String> owners = new HashMap<>();
+
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        private final Map<String, Integer> waiters = new HashMap<>();
+
+        private final List<Integer> timeouts = new ArrayList<>();
+
+        @Override
+        public synchronized boolean tryLock(String lockKey, String val, int lockTime) {
+            String owner = owners.get(lockKey);
+            if (owner != null && !owner.equals(val)) {
+                return false;
+            }
+            owners.put(lockKey, val);
+            counts.merge(lockKey, 1, Integer::sum);
+            return true;
+        }
+
+        @Override
+        public synchronized void lock(String lockKey, String val, int lockTime) throws InterruptedException {
+            waiters.merge(lockKey, 1, Integer::sum);
+            notifyAll();
+            try {
+                while (!tryLock(lockKey, val, lockTime)) {
+                    wait();
+                }
+            } finally {
+                waiters.merge(lockKey, -1, Integer::sum);
+            }
+        }
+
+        @Override
+        public synchronized boolean lock(String lockKey, String val, int lockTime, int timeout)
+                throws InterruptedException {
+            timeouts.add(timeout);
+            long deadline = System.currentTimeMillis() + timeout * 1000L;
+            waiters.merge(lockKey, 1, Integer::sum);
+            notifyAll();
+            try {
+                for(; ;){
+                    if (tryLock(lockKey, val, lockTime)) {
+                        return true;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+            } finally {
+                waiters.merge(lockKey, -1, Integer::sum);
+            }
+        }
+
+        @Override
+        public synchronized boolean unlock(String lockKey) {
+            Integer count = counts.get(lockKey);
+            if (count == null) {
+                return false;
+            }
+            if (count == 1) {
+                counts.remove(lockKey);
+                owners.remove(lockKey);
+                notifyAll();
+            } else {
+                counts.put(lockKey, count - 1);
+            }
+            return true;
+        }
+
+        @Override
+        public synchronized boolean tryLock(Collection<String> lockKeys, String val, int lockTime) {
+            for (String lockKey : lockKeys) {
+                String owner = owners.get(lockKey);
+                if (owner != null && !owner.equals(val)) {
+                    return false;
+                }
+            }
+            for (String lockKey : lockKeys) {
+                tryLock(lockKey, val, lockTime);
+            }
+            return true;
+        }
+
+        @Override
+        public void lock(Collection<String> lockKeys, String val, int lockTime) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean lock(Collection<String> lockKeys, String val, int lockTime, int timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public synchronized boolean unlock(Collection<String> lockKeys) {
+            boolean result = true;
+            for (String lockKey : lockKeys) {
+                result &= unlock(lockKey);
+            }
+            return result;
+        }
+
+        synchronized int holdCount(String lockKey) {
+            return counts.getOrDefault(lockKey, 0);
+        }
+
+        synchronized void awaitWaiters(String lockKey, int n) throws InterruptedException {
+            while (waiters.getOrDefault(lockKey, 0) < n) {
+                wait();
+            }
+        }
+    }
+}
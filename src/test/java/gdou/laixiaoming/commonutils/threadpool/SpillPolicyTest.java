@@ -0,0 +1,82 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SpillPolicyTest {
+
+    private static final List<String> executed = new ArrayList<>();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void allowedTaskRoundTrips() throws Exception {
+        SpillPolicy policy = new SpillPolicy(folder.getRoot().getPath(), SpillQueue.DEFAULT_SEGMENT_SIZE,
+                "gdou.laixiaoming.commonutils");
+        String name = "task1";
+        int[] retries = {3};
+        Runnable task = (Runnable & Serializable) () -> executed.add(name + ":" + retries[0]);
+
+        executed.clear();
+        policy.deserialize(policy.serialize(task)).run();
+        policy.deserialize(policy.serialize(new Task(1L))).run();
+        assertEquals(2, executed.size());
+        assertEquals("task1:3", executed.get(0));
+        assertEquals("1", executed.get(1));
+    }
+
+    @Test
+    public void disallowedTaskIsNotSpilled() throws IOException {
+        SpillPolicy policy = new SpillPolicy(folder.getRoot().getPath(), SpillQueue.DEFAULT_SEGMENT_SIZE);
+        try {
+            policy.serialize(new Task(1L));
+            fail();
+        } catch (InvalidClassException e) {
+            assertEquals(Task.class.getName(), e.classname);
+        }
+    }
+
+    @Test
+    public void disallowedClassIsNotLoaded() throws Exception {
+        //模拟被写入转存目录的文件
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new Task(1L));
+        }
+        SpillPolicy policy = new SpillPolicy(folder.getRoot().getPath(), SpillQueue.DEFAULT_SEGMENT_SIZE,
+                "com.example");
+        try {
+            policy.deserialize(bytes.toByteArray());
+            fail();
+        } catch (InvalidClassException e) {
+            assertEquals(Task.class.getName(), e.classname);
+        }
+    }
+
+    private static class Task implements Runnable, Serializable {
+
+        private final Long id;
+
+        private Task(Long id) {
+            this.id = id;
+        }
+
+        @Override
+        public void run() {
+            executed.add(String.valueOf(id));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package gdou.laixiaoming.commonutils.threadpool;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpillQueueTest {
+
+    /**
+     * 每个分段可容纳3条5字节的记录及结束标记
+     */
+    private static final int SEGMENT_SIZE = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void peekAndCommitInOrder() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        assertNull(queue.peek());
+        queue.append(bytes("task1"));
+        queue.append(bytes("task2"));
+        assertEquals(2, queue.pending());
+
+        //未提交时重复读到同一条记录
+        assertArrayEquals(bytes("task1"), queue.peek());
+        assertArrayEquals(bytes("task1"), queue.peek());
+        queue.commit();
+        assertEquals(1, queue.pending());
+        assertArrayEquals(bytes("task2"), queue.peek());
+        queue.commit();
+        assertEquals(0, queue.pending());
+        assertNull(queue.peek());
+    }
+
+    @Test
+    public void recoverSkipsCommittedRecords() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        for (int i = 1; i <= 5; i++) {
+            queue.append(bytes("task" + i));
+        }
+        queue.peek();
+        queue.commit();
+        queue.peek();
+        queue.commit();
+        queue.flush();
+
+        SpillQueue recovered = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        assertEquals(3, recovered.pending());
+        for (int i = 3; i <= 5; i++) {
+            assertArrayEquals(bytes("task" + i), recovered.peek());
+            recovered.commit();
+        }
+        assertEquals(0, recovered.pending());
+        assertNull(recovered.peek());
+    }
+
+    @Test
+    public void recoveredSegmentsAreNotWrittenAgain() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        queue.append(bytes("task1"));
+        queue.flush();
+
+        SpillQueue recovered = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        recovered.append(bytes("task2"));
+        assertEquals(2, spillFiles().length);
+        assertArrayEquals(bytes("task1"), recovered.peek());
+        recovered.commit();
+        assertArrayEquals(bytes("task2"), recovered.peek());
+        recovered.commit();
+        assertEquals(0, recovered.pending());
+    }
+
+    @Test
+    public void commitWithoutRecordIsIgnored() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        queue.commit();
+        queue.append(bytes("task1"));
+        queue.peek();
+        queue.commit();
+        queue.commit();
+        assertEquals(0, queue.pending());
+
+        assertEquals(0, new SpillQueue(folder.getRoot(), SEGMENT_SIZE).pending());
+    }
+
+    @Test
+    public void drainedSegmentsAreDeleted() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        for (int i = 1; i <= 7; i++) {
+            queue.append(bytes("task" + i));
+        }
+        assertEquals(3, spillFiles().length);
+        for (int i = 1; i <= 7; i++) {
+            assertArrayEquals(bytes("task" + i), queue.peek());
+            queue.commit();
+        }
+        assertNull(queue.peek());
+        //只保留未写满的写分段
+        assertEquals(1, spillFiles().length);
+    }
+
+    @Test
+    public void drainedSegmentsAreUnmapped() throws IOException {
+        File maps = new File("/proc/self/maps");
+        Assume.assumeTrue(maps.exists());
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        for (int i = 1; i <= 4; i++) {
+            queue.append(bytes("task" + i));
+        }
+        String drained = spillFiles()[0].getPath();
+        for (int i = 1; i <= 4; i++) {
+            queue.peek();
+            queue.commit();
+        }
+        queue.peek();
+        String mappings = new String(Files.readAllBytes(Paths.get(maps.getPath())), StandardCharsets.UTF_8);
+        assertFalse(mappings.contains(drained));
+    }
+
+    @Test
+    public void oversizedRecordIsRejected() throws IOException {
+        SpillQueue queue = new SpillQueue(folder.getRoot(), SEGMENT_SIZE);
+        assertFalse(queue.append(new byte[SEGMENT_SIZE]));
+        assertTrue(queue.append(new byte[SEGMENT_SIZE - 8]));
+        assertEquals(1, queue.pending());
+    }
+
+    private File[] spillFiles() {
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(".spill"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}